@@ -0,0 +1,88 @@
+package in.vshukla.booksindia;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Throughput of adding documents to the index through the various {@link Indexer} entry points.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class IndexingBenchmark {
+
+    @Param("10000")
+    public int bookCount;
+
+    private List<SyntheticBooks.Book> books;
+    private List<Map<String, String>> maps;
+    private ResultSet resultSet;
+    private RowConverter rowConverter;
+
+    private Path idxDir;
+    private Indexer indexer;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        books = SyntheticBooks.generate(bookCount);
+        maps = books.stream().map(SyntheticBooks::toMap).collect(Collectors.toList());
+        resultSet = SyntheticBooks.resultSet(books);
+
+        idxDir = Files.createTempDirectory("booksindia-bench");
+        indexer = new Indexer();
+        indexer.initialize(idxDir.toString());
+        rowConverter = new RowConverter(indexer.getSchema());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        indexer.close();
+        SyntheticBooks.deleteRecursively(idxDir);
+    }
+
+    private int nextIndex() {
+        next = next + 1 == bookCount ? 0 : next + 1;
+        return next;
+    }
+
+    @Benchmark
+    public void insertMap() throws IOException {
+        indexer.insert(maps.get(nextIndex()));
+    }
+
+    @Benchmark
+    public void insertObject() throws IOException {
+        indexer.insert((Object) books.get(nextIndex()));
+    }
+
+    @Benchmark
+    public void insertRow() throws IOException, SQLException {
+        resultSet.next();
+        indexer.insert(rowConverter.convert(resultSet));
+    }
+}
@@ -0,0 +1,100 @@
+package in.vshukla.booksindia;
+
+import org.apache.lucene.document.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning a source record into something the indexer accepts, without touching the index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MappingBenchmark {
+
+    @Param("10000")
+    public int bookCount;
+
+    private List<SyntheticBooks.Book> books;
+    private ResultSet resultSet;
+    private RowConverter rowConverter;
+    private IndexSchema schema;
+    private DocumentMappers mappers;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        books = SyntheticBooks.generate(bookCount);
+        resultSet = SyntheticBooks.resultSet(books);
+        schema = IndexSchema.forBooks();
+        rowConverter = new RowConverter(schema);
+        mappers = new DocumentMappers(schema);
+    }
+
+    private int nextIndex() {
+        next = next + 1 == bookCount ? 0 : next + 1;
+        return next;
+    }
+
+    @Benchmark
+    public Map<String, String> objectToMap() {
+        return AppUtils.getMapFromObject(books.get(nextIndex()));
+    }
+
+    /**
+     * Object conversion as done by {@link Indexer#insert(Object)}, straight into the fields.
+     */
+    @Benchmark
+    public Document objectToDocument() {
+        return mappers.toDocument(books.get(nextIndex()));
+    }
+
+    @Benchmark
+    public Document mapToDocument() {
+        Map<String, String> map = SyntheticBooks.toMap(books.get(nextIndex()));
+        Document document = new Document();
+        map.forEach((k, v) -> schema.addFields(document, k, v));
+        return document;
+    }
+
+    /**
+     * Row conversion as done by FetchResult before {@link RowConverter}, metadata lookup and map per row.
+     */
+    @Benchmark
+    public Map<String, String> rowToMap() throws SQLException {
+        resultSet.next();
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        Map<String, String> data = new HashMap<>(metaData.getColumnCount());
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            data.put(metaData.getColumnName(i), AppUtils.cleanValue(resultSet.getString(i)));
+        }
+        return data;
+    }
+
+    @Benchmark
+    public Document rowToDocument() throws SQLException {
+        resultSet.next();
+        return rowConverter.convert(resultSet);
+    }
+}
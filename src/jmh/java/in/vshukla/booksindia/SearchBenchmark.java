@@ -0,0 +1,104 @@
+package in.vshukla.booksindia;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TopDocs;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The query path of the shell : parse, search and load the stored fields of the top hits.
+ * Hit doc ids stay valid across invocations, as the index is not modified during a trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SearchBenchmark {
+
+    private static final int NUM_RESULTS = 25;
+
+    private static final Set<String> LISTING_FIELDS = new HashSet<>(Arrays.asList("id", "isbn", "title"));
+
+    @Param("10000")
+    public int bookCount;
+
+    @Param({ "india", "title:(monsoon river)", "\"midnight children\"", "id:[100 TO 200]" })
+    public String queryStr;
+
+    private Path idxDir;
+    private BookSearcher bookSearcher;
+    private Query query;
+    private TopDocs topDocs;
+    private DocumentLoader loader;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, ParseException {
+        idxDir = Files.createTempDirectory("booksindia-bench");
+        SyntheticBooks.writeIndex(idxDir, SyntheticBooks.generate(bookCount));
+        bookSearcher = BookSearcher.open(idxDir.toString());
+        query = bookSearcher.parse(queryStr);
+        topDocs = search();
+        loader = new DocumentLoader(IndexSchema.forBooks());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        bookSearcher.close();
+        SyntheticBooks.deleteRecursively(idxDir);
+    }
+
+    @Benchmark
+    public Query parse() throws ParseException {
+        return bookSearcher.parse(queryStr);
+    }
+
+    @Benchmark
+    public TopDocs search() throws IOException {
+        return bookSearcher.execute(searcher -> searcher.search(query, NUM_RESULTS));
+    }
+
+    /**
+     * Load every stored field of the top hits, bypassing the result cache.
+     */
+    @Benchmark
+    public List<Document> loadAll() throws IOException {
+        return bookSearcher.execute(searcher -> loader.load(searcher, topDocs.scoreDocs, null));
+    }
+
+    /**
+     * Load a listing style projection of the top hits, bypassing the result cache.
+     */
+    @Benchmark
+    public List<Document> loadListing() throws IOException {
+        return bookSearcher.execute(searcher -> loader.load(searcher, topDocs.scoreDocs, LISTING_FIELDS));
+    }
+
+    @Benchmark
+    public List<Document> parseSearchAndLoad() throws IOException, ParseException {
+        return bookSearcher.search(queryStr, NUM_RESULTS);
+    }
+}
@@ -0,0 +1,145 @@
+package in.vshukla.booksindia;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Deterministic synthetic book dataset used by the benchmarks.
+ */
+public class SyntheticBooks {
+
+    static final String[] COLUMNS = { "id", "isbn", "title", "gr_id", "review" };
+
+    private static final String[] WORDS = {
+            "india", "history", "river", "monsoon", "empire", "story", "garden", "city", "night", "train",
+            "village", "mountain", "tiger", "temple", "ocean", "silk", "spice", "journey", "letters", "kingdom",
+            "freedom", "midnight", "children", "god", "small", "things", "white", "suitable", "boy", "palace",
+            "illusions", "inheritance", "loss", "shadow", "lines", "glass", "room", "sea", "poppies", "hungry",
+            "tide", "serious", "men", "golden", "gate", "malgudi", "days", "guide", "namesake", "interpreter"
+    };
+
+    /**
+     * Book as seen by {@link Indexer#insert(Object)}.
+     */
+    public static class Book {
+        public int id;
+        public String isbn;
+        public String title;
+        public String gr_id;
+        public String review;
+    }
+
+    public static List<Book> generate(int count) {
+        Random random = new Random(42);
+        List<Book> books = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Book book = new Book();
+            book.id = i + 1;
+            book.isbn = String.format("978%010d", random.nextInt(Integer.MAX_VALUE));
+            book.title = words(random, 2 + random.nextInt(5));
+            book.gr_id = Integer.toString(random.nextInt(10_000_000));
+            book.review = words(random, 50 + random.nextInt(100));
+            books.add(book);
+        }
+        return books;
+    }
+
+    public static Map<String, String> toMap(Book book) {
+        Map<String, String> map = new HashMap<>();
+        map.put("id", Integer.toString(book.id));
+        map.put("isbn", book.isbn);
+        map.put("title", book.title);
+        map.put("gr_id", book.gr_id);
+        map.put("review", book.review);
+        return map;
+    }
+
+    private static String[] toRow(Book book) {
+        return new String[] { Integer.toString(book.id), book.isbn, book.title, book.gr_id, book.review };
+    }
+
+    /**
+     * A minimal forward only {@link ResultSet} over the given books, supporting what the ingest path reads.
+     */
+    public static ResultSet resultSet(List<Book> books) {
+        final List<String[]> rows = new ArrayList<>(books.size());
+        books.forEach(b -> rows.add(toRow(b)));
+        final int[] cursor = { -1 };
+
+        final ResultSetMetaData metaData = (ResultSetMetaData) Proxy.newProxyInstance(
+                SyntheticBooks.class.getClassLoader(), new Class<?>[] { ResultSetMetaData.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getColumnCount":
+                            return COLUMNS.length;
+                        case "getColumnName":
+                        case "getColumnLabel":
+                            return COLUMNS[(Integer) args[0] - 1];
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+
+        return (ResultSet) Proxy.newProxyInstance(
+                SyntheticBooks.class.getClassLoader(), new Class<?>[] { ResultSet.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "next":
+                            cursor[0] = (cursor[0] + 1) % rows.size();
+                            return true;
+                        case "getString":
+                            return rows.get(cursor[0])[(Integer) args[0] - 1];
+                        case "getMetaData":
+                            return metaData;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    /**
+     * Build an index of the given books in the given directory.
+     */
+    public static void writeIndex(Path dir, List<Book> books) throws IOException {
+        try (Indexer indexer = new Indexer()) {
+            indexer.initialize(dir.toString());
+            for (Book book : books) {
+                indexer.insert(toMap(book));
+            }
+            indexer.markComplete();
+        }
+    }
+
+    public static void deleteRecursively(Path dir) throws IOException {
+        if (dir == null || !Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private static String words(Random random, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sb.toString();
+    }
+}
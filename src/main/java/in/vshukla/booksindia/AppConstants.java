@@ -10,16 +10,112 @@ public interface AppConstants {
     String PROP_DB_USR = "BOOKSINDIA_DB_USR";
     String PROP_DB_PWD = "BOOKSINDIA_DB_PWD";
     String PROP_IDX_LOC = "BOOKSINDIA_IDX_LOC";
+    String PROP_DB_POOL_SIZE = "BOOKSINDIA_DB_POOL_SIZE";
+    String PROP_DB_BORROW_TIMEOUT_MS = "BOOKSINDIA_DB_BORROW_TIMEOUT_MS";
+    String PROP_DB_IDLE_TIMEOUT_MS = "BOOKSINDIA_DB_IDLE_TIMEOUT_MS";
+    String PROP_DB_STATEMENT_CACHE_SIZE = "BOOKSINDIA_DB_STATEMENT_CACHE_SIZE";
+    String PROP_DB_PREPARE_THRESHOLD = "BOOKSINDIA_DB_PREPARE_THRESHOLD";
 
     String PROP_USER = "USER";
 
     String DEFAULT_DB_URL = "jdbc:postgresql://localhost/%s";
     String DEFAULT_DB_PWD = "password";
     String DEFAULT_IDX_LOC = "/tmp/booksindia";
+    int DEFAULT_DB_POOL_SIZE = Runtime.getRuntime().availableProcessors() + 1;
+    int DEFAULT_DB_BORROW_TIMEOUT_MS = 30_000;
+    int DEFAULT_DB_IDLE_TIMEOUT_MS = 300_000;
+    int DEFAULT_DB_VALIDATION_TIMEOUT_SEC = 5;
+    int DEFAULT_DB_STATEMENT_CACHE_SIZE = 64;
+    int DEFAULT_DB_PREPARE_THRESHOLD = 1;
+
+    String PROP_IDX_MODE = "BOOKSINDIA_IDX_MODE";
+    String IDX_MODE_FULL = "full";
+    String IDX_MODE_INCREMENTAL = "incremental";
+    String DEFAULT_IDX_MODE = IDX_MODE_FULL;
+
+    String PROP_IDX_UNSTORED = "BOOKSINDIA_IDX_UNSTORED";
+    String DEFAULT_IDX_UNSTORED = "";
+
+    String PROP_IDX_SHARDS = "BOOKSINDIA_IDX_SHARDS";
+    int DEFAULT_IDX_SHARDS = 1;
+
+    String PROP_IDX_PROFILE = "BOOKSINDIA_IDX_PROFILE";
+    String DEFAULT_IDX_PROFILE = "serving";
+    String PROP_IDX_RAM_BUFFER_MB = "BOOKSINDIA_IDX_RAM_BUFFER_MB";
+    String PROP_IDX_FORCE_MERGE_SEGMENTS = "BOOKSINDIA_IDX_FORCE_MERGE_SEGMENTS";
+
+    String PROP_SEARCH_THREADS = "BOOKSINDIA_SEARCH_THREADS";
+    int DEFAULT_SEARCH_THREADS = Runtime.getRuntime().availableProcessors();
+
+    String PROP_IDX_DOCVALUES = "BOOKSINDIA_IDX_DOCVALUES";
+    String DEFAULT_IDX_DOCVALUES = "isbn,title";
+
+    String FIELD_ID = "id";
+    String FIELD_TITLE = "title";
+    String COMMIT_LAST_ID = "booksindia.lastId";
+
+    String PROP_LOAD_BATCH_SIZE = "BOOKSINDIA_LOAD_BATCH_SIZE";
+    String PROP_LOAD_COMMIT_INTERVAL = "BOOKSINDIA_LOAD_COMMIT_INTERVAL";
+    String PROP_LOAD_HEADER = "BOOKSINDIA_LOAD_HEADER";
+    int DEFAULT_LOAD_BATCH_SIZE = 1000;
+    int DEFAULT_LOAD_COMMIT_INTERVAL = 50_000;
+    String DEFAULT_LOAD_HEADER = "true";
 
     int DEFAULT_FETCH_SIZE = 128;
     int DEFAULT_FETCH_DIRN = ResultSet.FETCH_FORWARD;
 
+    String PROP_INGEST_PARTITIONS = "BOOKSINDIA_INGEST_PARTITIONS";
+    int DEFAULT_INGEST_PARTITIONS = Runtime.getRuntime().availableProcessors();
+    String PROP_INGEST_WORKERS = "BOOKSINDIA_INGEST_WORKERS";
+    String PROP_INGEST_QUEUE_DEPTH = "BOOKSINDIA_INGEST_QUEUE_DEPTH";
+    int DEFAULT_INGEST_WORKERS = Runtime.getRuntime().availableProcessors();
+    int DEFAULT_INGEST_QUEUE_DEPTH = 1024;
+    String PROP_CHECKPOINT_ROWS = "BOOKSINDIA_CHECKPOINT_ROWS";
+    String PROP_CHECKPOINT_SEC = "BOOKSINDIA_CHECKPOINT_SEC";
+    String PROP_KEYSET_PAGE_SIZE = "BOOKSINDIA_KEYSET_PAGE_SIZE";
+    // Checkpoints are opt-in, as they read the rows in order on a single connection instead of in parallel partitions.
+    int DEFAULT_CHECKPOINT_ROWS = 0;
+    int DEFAULT_CHECKPOINT_SEC = 0;
+    int DEFAULT_KEYSET_PAGE_SIZE = 10_000;
+    String PROP_PROGRESS_INTERVAL_SEC = "BOOKSINDIA_PROGRESS_INTERVAL_SEC";
+    int DEFAULT_PROGRESS_INTERVAL_SEC = 10;
+
+    String JMX_DOMAIN = "in.vshukla.booksindia";
+
+    String PROP_CACHE_SIZE = "BOOKSINDIA_CACHE_SIZE";
+    String PROP_CACHE_MAX_BYTES = "BOOKSINDIA_CACHE_MAX_BYTES";
+    String PROP_CACHE_DOCS = "BOOKSINDIA_CACHE_DOCS";
+    int DEFAULT_CACHE_SIZE = 1024;
+    int DEFAULT_CACHE_MAX_BYTES = 64 * 1024 * 1024;
+    String DEFAULT_CACHE_DOCS = "true";
+
+    String PROP_NRT = "BOOKSINDIA_NRT";
+    String PROP_NRT_MAX_STALE_MS = "BOOKSINDIA_NRT_MAX_STALE_MS";
+    String DEFAULT_NRT = "false";
+    int DEFAULT_NRT_MAX_STALE_MS = 1000;
+
+    String PROP_PAGE_SIZE = "BOOKSINDIA_PAGE_SIZE";
+    String PROP_CURSOR_MAX_AGE_SEC = "BOOKSINDIA_CURSOR_MAX_AGE_SEC";
+    int DEFAULT_PAGE_SIZE = 25;
+    int DEFAULT_CURSOR_MAX_AGE_SEC = 600;
+
+    String PROP_SERVER_PORT = "BOOKSINDIA_SERVER_PORT";
+    String PROP_SERVER_THREADS = "BOOKSINDIA_SERVER_THREADS";
+    int DEFAULT_SERVER_PORT = 8080;
+    int DEFAULT_SERVER_THREADS = Runtime.getRuntime().availableProcessors() * 2;
+    int DEFAULT_NUM_RESULTS = 25;
+    int MAX_NUM_RESULTS = 1000;
+    int DEFAULT_NUM_SUGGESTIONS = 10;
+    int MAX_LOOKUP_KEYS = 10_000;
+
+    String PROP_SLOW_QUERY_MS = "BOOKSINDIA_SLOW_QUERY_MS";
+    int DEFAULT_SLOW_QUERY_MS = 100;
+
+    String PROP_SUGGEST_FIELDS = "BOOKSINDIA_SUGGEST_FIELDS";
+    String DEFAULT_SUGGEST_FIELDS = FIELD_TITLE;
+    String PROP_SUGGEST_REBUILD_SEC = "BOOKSINDIA_SUGGEST_REBUILD_SEC";
+    int DEFAULT_SUGGEST_REBUILD_SEC = 60;
+
     String PROP_PS2 = "PS2";
     String DEFAULT_PS2 = ">> ";
 
@@ -5,6 +5,11 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -62,6 +67,28 @@ public class AppUtils {
         return null;
     }
 
+    /**
+     * Get the integer value of given property.
+     * Precedence is same as that of {@link #getProperty(String)}.
+     * The default value is returned in case the property is not found or is not a valid integer.
+     *
+     * @param propName      Name of the property
+     * @param defaultVal    Value to be used in case the property is absent or malformed.
+     * @return Integer value of the required property.
+     */
+    public static int getIntProperty (String propName, int defaultVal) {
+        String val = getProperty(propName);
+        if (val == null) {
+            return defaultVal;
+        }
+        try {
+            return Integer.parseInt(val);
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Property {} has a non-integer value {}. Using default {}.", propName, val, defaultVal);
+            return defaultVal;
+        }
+    }
+
     /**
      * Check for blankness of a String. Throw an {@link IllegalArgumentException} if it is.
      * @param str   String to be checked for blankness.
@@ -158,6 +185,49 @@ public class AppUtils {
         return Files.exists(filePath) && criteria.test(filePath);
     }
 
+    /**
+     * Register the given MBean with the platform MBean server under {@value AppConstants#JMX_DOMAIN}:type=&lt;type&gt;.
+     * Any MBean already registered under the name is replaced. Failures are logged and ignored.
+     *
+     * @param type  Type of the MBean.
+     * @param mbean MBean to be registered.
+     */
+    public static void registerMBean(String type, Object mbean) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = getMBeanName(type);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(mbean, name);
+        } catch (JMException e) {
+            LOGGER.warn("Unable to register the MBean {}", type, e);
+        }
+    }
+
+    /**
+     * Unregister the given MBean, in case it is the one registered under its type.
+     *
+     * @param type  Type of the MBean.
+     * @param mbean MBean to be unregistered.
+     */
+    public static void unregisterMBean(String type, Object mbean) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = getMBeanName(type);
+            // Another instance may have replaced it in the meanwhile.
+            if (server.isRegistered(name) && server.isInstanceOf(name, mbean.getClass().getName())) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            LOGGER.warn("Unable to unregister the MBean {}", type, e);
+        }
+    }
+
+    private static ObjectName getMBeanName(String type) throws MalformedObjectNameException {
+        return new ObjectName(AppConstants.JMX_DOMAIN + ":type=" + type);
+    }
+
     private static final ObjectMapper MAPPER = new ObjectMapper();
 
     /**
@@ -0,0 +1,231 @@
+package in.vshukla.booksindia;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import in.vshukla.booksindia.exceptions.AppRuntimeException;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs a file of queries against the index and writes the results as JSON Lines.
+ * Meant to be rerun on every change, as a regression check of both the results and the latency.
+ *
+ * Every line of the query file is a query, in the syntax of the shell. Blank lines and lines starting with # are
+ * skipped. The queries are shared by a pool of threads searching through the same {@link BookSearcher}.
+ * Every query yields a single line in the output, holding its line number, hits and latency, or the error.
+ * Lines are written in the order of the queries, so that the outputs of two runs can be diffed. Throughput and latency
+ * percentiles are logged at the end.
+ * Repeated queries are served from the result cache. Set {@value AppConstants#PROP_CACHE_SIZE} to 0 to time the
+ * searches themselves.
+ *
+ * Usage : BatchQueryRunner &lt;queryFile&gt; &lt;outputFile&gt; [threads] [limit]
+ */
+public class BatchQueryRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchQueryRunner.class);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final BookSearcher bookSearcher;
+
+    private final int threads;
+
+    private final int limit;
+
+    /**
+     * @param bookSearcher  Searcher the queries are run against. Not closed by the runner.
+     * @param threads       Number of threads running the queries.
+     * @param limit         Maximum number of documents written per query.
+     */
+    public BatchQueryRunner(BookSearcher bookSearcher, int threads, int limit) {
+        AppUtils.nullCheck(bookSearcher, "Batch : Cannot run without a searcher.");
+        if (threads < 1 || limit < 1) {
+            throw new IllegalArgumentException("Batch : Threads and limit should be positive.");
+        }
+        this.bookSearcher = bookSearcher;
+        this.threads = threads;
+        this.limit = limit;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            LOGGER.error("Usage : BatchQueryRunner <queryFile> <outputFile> [threads] [limit]");
+            return;
+        }
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int limit = args.length > 3 ? Integer.parseInt(args[3]) : AppConstants.DEFAULT_NUM_RESULTS;
+        String idxDirStr = AppUtils.getProperty(AppConstants.PROP_IDX_LOC, () -> AppConstants.DEFAULT_IDX_LOC);
+        try (BookSearcher bookSearcher = BookSearcher.open(idxDirStr)) {
+            new BatchQueryRunner(bookSearcher, threads, limit).run(Paths.get(args[0]), Paths.get(args[1]));
+        }
+    }
+
+    /**
+     * Run every query of the given file, writing the results to the output file.
+     *
+     * @param queryFile     File of queries, one per line.
+     * @param outputFile    File the results are written to. Replaced in case it exists.
+     * @return Summary of the run.
+     * @throws IOException In case of errors while reading the queries or writing the results.
+     */
+    public Summary run(Path queryFile, Path outputFile) throws IOException {
+        List<String> lines = Files.readAllLines(queryFile, StandardCharsets.UTF_8);
+        final AtomicInteger next = new AtomicInteger();
+        final LongAdder errors = new LongAdder();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        SearchLoadGenerator.LatencyRecorder all = new SearchLoadGenerator.LatencyRecorder();
+        long start = System.nanoTime();
+        try (BufferedWriter writer = Files.newBufferedWriter(outputFile, StandardCharsets.UTF_8)) {
+            OrderedOutput output = new OrderedOutput(writer, lines.size());
+            List<Future<long[]>> futures = new ArrayList<>(threads);
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> runWorker(lines, next, output, errors)));
+            }
+            for (Future<long[]> future : futures) {
+                all.addAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AppRuntimeException("Batch : Interrupted.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new AppRuntimeException("Batch : Worker failed.", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Summary summary = new Summary(all.sorted(), errors.sum(), System.nanoTime() - start);
+        LOGGER.info("Batch : Wrote the results to {}. {}", outputFile, summary);
+        return summary;
+    }
+
+    private long[] runWorker(List<String> lines, AtomicInteger next, OrderedOutput output, LongAdder errors) throws IOException {
+        SearchLoadGenerator.LatencyRecorder recorder = new SearchLoadGenerator.LatencyRecorder();
+        for (int i = next.getAndIncrement(); i < lines.size(); i = next.getAndIncrement()) {
+            String query = lines.get(i).trim();
+            if (query.isEmpty() || query.startsWith("#")) {
+                output.skip(i);
+                continue;
+            }
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("line", i + 1);
+            result.put("query", query);
+            long start = System.nanoTime();
+            try {
+                BookSearcher.Page page = bookSearcher.searchPage(bookSearcher.parse(query), limit, null);
+                long took = System.nanoTime() - start;
+                recorder.add(took);
+                result.put("tookMs", took / 1e6);
+                result.put("totalHits", page.totalHits);
+                result.put("docs", toMaps(page.docs));
+            } catch (ParseException | IllegalArgumentException e) {
+                errors.increment();
+                result.put("error", e.getMessage());
+            }
+            output.write(i, MAPPER.writeValueAsString(result));
+        }
+        return recorder.toArray();
+    }
+
+    /**
+     * Writes the results in the order of the lines of the query file. Results completing ahead of an earlier line are
+     * held back till that line is written.
+     */
+    private static class OrderedOutput {
+        private static final String SKIPPED = "";
+
+        private final Writer writer;
+
+        // Results held back, by line index.
+        private final String[] pending;
+
+        private int nextLine;
+
+        OrderedOutput(Writer writer, int lines) {
+            this.writer = writer;
+            this.pending = new String[lines];
+        }
+
+        void skip(int line) throws IOException {
+            write(line, SKIPPED);
+        }
+
+        synchronized void write(int line, String json) throws IOException {
+            pending[line] = json;
+            for (; nextLine < pending.length && pending[nextLine] != null; nextLine++) {
+                if (!pending[nextLine].isEmpty()) {
+                    writer.write(pending[nextLine]);
+                    writer.write('\n');
+                }
+                pending[nextLine] = null;
+            }
+        }
+    }
+
+    private List<Map<String, String>> toMaps(List<Document> docs) {
+        List<Map<String, String>> maps = new ArrayList<>(docs.size());
+        for (Document doc : docs) {
+            Map<String, String> map = new LinkedHashMap<>();
+            for (IndexableField field : doc.getFields()) {
+                map.putIfAbsent(field.name(), field.stringValue());
+            }
+            maps.add(map);
+        }
+        return maps;
+    }
+
+    /**
+     * Throughput and latency of a run. Latencies cover parsing, searching and loading the documents.
+     */
+    public static class Summary {
+        public final int queries;
+        public final long errors;
+        public final long elapsedNanos;
+        public final long p50Nanos, p95Nanos, p99Nanos, maxNanos;
+
+        Summary(long[] sortedLatencies, long errors, long elapsedNanos) {
+            this.queries = sortedLatencies.length;
+            this.errors = errors;
+            this.elapsedNanos = elapsedNanos;
+            this.p50Nanos = SearchLoadGenerator.percentile(sortedLatencies, 50);
+            this.p95Nanos = SearchLoadGenerator.percentile(sortedLatencies, 95);
+            this.p99Nanos = SearchLoadGenerator.percentile(sortedLatencies, 99);
+            this.maxNanos = queries == 0 ? 0 : sortedLatencies[queries - 1];
+        }
+
+        public double getThroughput() {
+            return elapsedNanos <= 0 ? 0 : queries * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Queries : %d, Errors : %d, Time : %.1f s, Throughput : %.1f q/s, "
+                            + "Latency ms p50 : %.3f, p95 : %.3f, p99 : %.3f, max : %.3f",
+                    queries, errors, elapsedNanos / 1e9, getThroughput(),
+                    p50Nanos / 1e6, p95Nanos / 1e6, p99Nanos / 1e6, maxNanos / 1e6);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package in.vshukla.booksindia;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+
+/**
+ * Query parser aware of the {@link IndexSchema}.
+ * Untokenised fields are matched on the raw term instead of analysed text.
+ * Ranges on integer fields, like {@code id:[10 TO 20]}, are executed against the points index.
+ */
+public class BookQueryParser extends QueryParser {
+
+    private final IndexSchema schema;
+
+    public BookQueryParser(String defaultField, Analyzer analyzer, IndexSchema schema) {
+        super(defaultField, analyzer);
+        AppUtils.nullCheck(schema, "Lucene : Cannot parse queries without a schema.");
+        this.schema = schema;
+    }
+
+    @Override
+    protected Query getFieldQuery(String field, String queryText, boolean quoted) throws ParseException {
+        if (schema.getKind(field) == IndexSchema.FieldKind.TEXT) {
+            return super.getFieldQuery(field, queryText, quoted);
+        }
+        return new TermQuery(new Term(field, queryText));
+    }
+
+    @Override
+    protected Query getRangeQuery(String field, String part1, String part2, boolean startInclusive, boolean endInclusive) throws ParseException {
+        if (schema.getKind(field) != IndexSchema.FieldKind.INT) {
+            return super.getRangeQuery(field, part1, part2, startInclusive, endInclusive);
+        }
+        int lower = parseBound(field, part1, Integer.MIN_VALUE);
+        int upper = parseBound(field, part2, Integer.MAX_VALUE);
+        if (!startInclusive && !isOpen(part1)) {
+            if (lower == Integer.MAX_VALUE) {
+                return new MatchNoDocsQuery();
+            }
+            lower++;
+        }
+        if (!endInclusive && !isOpen(part2)) {
+            if (upper == Integer.MIN_VALUE) {
+                return new MatchNoDocsQuery();
+            }
+            upper--;
+        }
+        return IntPoint.newRangeQuery(field, lower, upper);
+    }
+
+    private boolean isOpen(String part) {
+        return part == null || "*".equals(part);
+    }
+
+    private int parseBound(String field, String part, int openValue) throws ParseException {
+        if (isOpen(part)) {
+            return openValue;
+        }
+        try {
+            return Integer.parseInt(part);
+        } catch (NumberFormatException e) {
+            throw new ParseException("Field " + field + " expects integer bounds. Found " + part);
+        }
+    }
+}
@@ -0,0 +1,494 @@
+package in.vshukla.booksindia;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Search path over the book index : parse the query, search it and load the matching documents.
+ * Safe for use from multiple threads. Every search runs against a searcher acquired from the {@link ReferenceManager},
+ * a {@link SearcherManager} over a single index or a {@link ShardedSearcherManager} over the shards of an index.
+ * Searchers created by {@link #searcherFactory()} search the segments of all the shards in parallel.
+ */
+public class BookSearcher implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BookSearcher.class);
+
+    /**
+     * Function to be executed against an acquired {@link IndexSearcher}.
+     *
+     * @param <T> Type of the result.
+     */
+    @FunctionalInterface
+    public interface SearcherFunction<T> {
+        T apply(IndexSearcher searcher) throws IOException;
+    }
+
+    private final ReferenceManager<IndexSearcher> searcherManager;
+
+    private final QueryResultCache cache;
+
+    private final DocumentLoader loader;
+
+    private final KeyLookup keyLookup;
+
+    private final QueryStats stats = QueryStats.create();
+
+    // Searchers handed out to cursors, so that every page of a query is read from the same point in time.
+    private final PinnedSearchers cursorSearchers = new PinnedSearchers();
+
+    private final double cursorMaxAgeSec;
+
+    private ScheduledExecutorService refresher;
+
+    // Is the searcher manager to be closed along with this searcher? Only in case it was opened here.
+    private boolean ownsManager;
+
+    // Moves the cache on to the searcher made current by a refresh. Lookups from older searchers do not.
+    private final ReferenceManager.RefreshListener cacheAdvancer = new ReferenceManager.RefreshListener() {
+        @Override
+        public void beforeRefresh() {
+        }
+
+        @Override
+        public void afterRefresh(boolean didRefresh) throws IOException {
+            if (didRefresh) {
+                IndexSearcher current = searcherManager.acquire();
+                try {
+                    cache.advance(generationOf(current));
+                } finally {
+                    searcherManager.release(current);
+                }
+            }
+        }
+    };
+
+    // QueryParser is not thread safe. So, every thread gets its own.
+    private final ThreadLocal<QueryParser> parser;
+
+    public BookSearcher(ReferenceManager<IndexSearcher> searcherManager, IndexSchema schema) {
+        this(searcherManager, schema, null);
+    }
+
+    /**
+     * The given searcher manager is owned by the caller, and stays open once this searcher is closed.
+     *
+     * @param searcherManager   Source of searchers.
+     * @param schema            Schema of the index.
+     * @param cache             Cache for the results. Null to disable caching.
+     */
+    public BookSearcher(ReferenceManager<IndexSearcher> searcherManager, IndexSchema schema, QueryResultCache cache) {
+        AppUtils.nullCheck(searcherManager, "Lucene : Cannot search without a SearcherManager.");
+        AppUtils.nullCheck(schema, "Lucene : Cannot search without a schema.");
+        this.searcherManager = searcherManager;
+        this.parser = ThreadLocal.withInitial(() -> new BookQueryParser(AppConstants.FIELD_TITLE, new StandardAnalyzer(), schema));
+        this.cache = cache;
+        this.loader = new DocumentLoader(schema);
+        this.keyLookup = new KeyLookup(schema);
+        this.cursorMaxAgeSec = AppUtils.getIntProperty(AppConstants.PROP_CURSOR_MAX_AGE_SEC, AppConstants.DEFAULT_CURSOR_MAX_AGE_SEC);
+        if (cache != null) {
+            searcherManager.addListener(cacheAdvancer);
+        }
+        AppUtils.registerMBean(QueryStats.JMX_TYPE, stats);
+    }
+
+    /**
+     * Create the result cache as configured by {@value AppConstants#PROP_CACHE_SIZE},
+     * {@value AppConstants#PROP_CACHE_MAX_BYTES} and {@value AppConstants#PROP_CACHE_DOCS}.
+     *
+     * @return Result cache. Null in case caching is switched off using a zero size.
+     */
+    public static QueryResultCache createCache() {
+        int size = AppUtils.getIntProperty(AppConstants.PROP_CACHE_SIZE, AppConstants.DEFAULT_CACHE_SIZE);
+        if (size <= 0) {
+            return null;
+        }
+        int maxBytes = AppUtils.getIntProperty(AppConstants.PROP_CACHE_MAX_BYTES, AppConstants.DEFAULT_CACHE_MAX_BYTES);
+        boolean cacheDocs = Boolean.parseBoolean(AppUtils.getProperty(AppConstants.PROP_CACHE_DOCS, () -> AppConstants.DEFAULT_CACHE_DOCS));
+        return new QueryResultCache(size, maxBytes, cacheDocs);
+    }
+
+    /**
+     * Factory of searchers which search the segments of an index in parallel, using a pool of
+     * {@value AppConstants#PROP_SEARCH_THREADS} threads shared by all the searchers.
+     * A single thread searches on the calling thread itself.
+     *
+     * @return Factory of searchers.
+     */
+    public static SearcherFactory searcherFactory() {
+        final ExecutorService executor = SearchExecutorHolder.EXECUTOR;
+        return new SearcherFactory() {
+            @Override
+            public IndexSearcher newSearcher(IndexReader reader, IndexReader previousReader) {
+                return new IndexSearcher(reader, executor);
+            }
+        };
+    }
+
+    /**
+     * Open a searcher over the index present in the given directory. Sharded indices are searched across all the shards.
+     *
+     * @param idxDirStr Directory holding the index.
+     * @return Searcher over the index.
+     * @throws IOException In case of low-level IO errors.
+     */
+    public static BookSearcher open(String idxDirStr) throws IOException {
+        AppUtils.blankStringCheck(idxDirStr, "Lucene : Cannot initialize a blank directory name.");
+        assert AppUtils.directoryExists(idxDirStr) : "Directory does not exists : " + idxDirStr;
+
+        List<Directory> shards = new ArrayList<>();
+        for (Path shardPath : IndexShards.detect(Paths.get(idxDirStr))) {
+            Directory shard = MMapDirectory.open(shardPath);
+            assert DirectoryReader.indexExists(shard) : "No indices present in the directory : " + shardPath;
+            shards.add(shard);
+        }
+
+        LOGGER.info("Initialized index reader from the directory {}. Shards : {}", idxDirStr, shards.size());
+        ReferenceManager<IndexSearcher> manager = shards.size() == 1
+                ? new SearcherManager(shards.get(0), searcherFactory())
+                : new ShardedSearcherManager(shards, searcherFactory());
+        BookSearcher bookSearcher = new BookSearcher(manager, IndexSchema.forBooks(), createCache());
+        bookSearcher.ownsManager = true;
+        bookSearcher.startRefresh(AppUtils.getIntProperty(AppConstants.PROP_NRT_MAX_STALE_MS, AppConstants.DEFAULT_NRT_MAX_STALE_MS));
+        return bookSearcher;
+    }
+
+    /**
+     * Periodically refresh the searcher so that newly committed documents become visible.
+     *
+     * @param periodMs Interval between refreshes.
+     */
+    public synchronized void startRefresh(long periodMs) {
+        if (refresher != null || periodMs <= 0) {
+            return;
+        }
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "searcher-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(this::maybeRefreshQuietly, periodMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void maybeRefreshQuietly() {
+        try {
+            searcherManager.maybeRefresh();
+        } catch (IOException e) {
+            LOGGER.error("Lucene : Unable to refresh the searcher.", e);
+        }
+    }
+
+    public ReferenceManager<IndexSearcher> getSearcherManager() {
+        return searcherManager;
+    }
+
+    /**
+     * @return Result cache in use. Null in case caching is disabled.
+     */
+    public QueryResultCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @return Latency of the searches run so far.
+     */
+    public QueryStats getQueryStats() {
+        return stats;
+    }
+
+    /**
+     * Parse the given query string. Field less terms are looked up in {@value AppConstants#FIELD_TITLE}.
+     *
+     * @param queryStr  Raw query.
+     * @return Parsed query.
+     * @throws ParseException In case the query is malformed.
+     */
+    public Query parse(String queryStr) throws ParseException {
+        AppUtils.blankStringCheck(queryStr, "Lucene : Cannot parse a blank query.");
+        long start = System.nanoTime();
+        Query query = parser.get().parse(queryStr);
+        stats.recordParse(query, System.nanoTime() - start);
+        return query;
+    }
+
+    /**
+     * Parse and search the given query, loading the top matching documents.
+     *
+     * @param queryStr      Raw query.
+     * @param numResults    Maximum number of documents to be returned.
+     * @return Top matching documents.
+     * @throws ParseException   In case the query is malformed.
+     * @throws IOException      In case of low-level IO errors.
+     */
+    public List<Document> search(String queryStr, int numResults) throws ParseException, IOException {
+        return search(parse(queryStr), numResults);
+    }
+
+    /**
+     * Search the given query, loading all the stored fields of the top matching documents.
+     *
+     * @see #search(Query, int, Set)
+     */
+    public List<Document> search(Query query, int numResults) throws IOException {
+        return search(query, numResults, null);
+    }
+
+    /**
+     * Search the given query, loading the top matching documents.
+     * Results are served from the cache when possible. Cached documents are shared and should not be modified.
+     *
+     * @param query         Query to be searched.
+     * @param numResults    Maximum number of documents to be returned.
+     * @param fields        Fields to be loaded. Null or empty to load all the stored fields.
+     * @return Top matching documents.
+     * @throws IOException In case of low-level IO errors.
+     */
+    public List<Document> search(Query query, int numResults, Set<String> fields) throws IOException {
+        Set<String> projection = toProjection(fields);
+        return execute(searcher -> collect(searcher, query, numResults, projection).docs);
+    }
+
+    /**
+     * Look up the document having the given value of an untokenised field, like isbn or gr_id.
+     * Much cheaper than searching a term query, see {@link KeyLookup}.
+     *
+     * @param field     Untokenised field.
+     * @param key       Value of the field.
+     * @param fields    Fields to be loaded. Null or empty to load all the stored fields.
+     * @return Matching document. Null in case there is none.
+     * @throws IOException In case of low-level IO errors.
+     */
+    public Document lookup(String field, String key, Set<String> fields) throws IOException {
+        Set<String> projection = toProjection(fields);
+        return execute(searcher -> keyLookup.lookup(searcher, field, key, projection));
+    }
+
+    /**
+     * Look up the documents having the given values of an untokenised field, all from the same point in time.
+     *
+     * @param field     Untokenised field.
+     * @param keys      Values of the field.
+     * @param fields    Fields to be loaded. Null or empty to load all the stored fields.
+     * @return Matching documents by key, in the order of the keys. Keys which are not found are left out.
+     * @throws IOException In case of low-level IO errors.
+     */
+    public Map<String, Document> lookup(String field, Collection<String> keys, Set<String> fields) throws IOException {
+        Set<String> projection = toProjection(fields);
+        return execute(searcher -> keyLookup.lookup(searcher, field, keys, projection));
+    }
+
+    /**
+     * Search a page of the results of the given query, loading all the stored fields.
+     *
+     * @see #searchPage(Query, int, String, Set)
+     */
+    public Page searchPage(Query query, int pageSize, String cursor) throws IOException {
+        return searchPage(query, pageSize, cursor, null);
+    }
+
+    /**
+     * Search a page of the results of the given query.
+     * Pages after the first are collected using {@link IndexSearcher#searchAfter(ScoreDoc, Query, int)}. So, every page
+     * costs the same irrespective of how deep it is. All the pages of a query are read from the searcher generation the
+     * first page was read from. Cursors expire once that generation has not been paged through for
+     * {@value AppConstants#PROP_CURSOR_MAX_AGE_SEC} seconds.
+     *
+     * @param query     Query to be searched.
+     * @param pageSize  Maximum number of documents in the page.
+     * @param cursor    Cursor returned along with the previous page. Null for the first page.
+     * @param fields    Fields to be loaded. Null or empty to load all the stored fields.
+     * @return Page of matching documents.
+     * @throws IOException              In case of low-level IO errors.
+     * @throws IllegalArgumentException In case the cursor is malformed, has expired, or was handed out for another query,
+     *                                  page size or set of fields.
+     */
+    public Page searchPage(Query query, int pageSize, String cursor, Set<String> fields) throws IOException {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size should be positive.");
+        }
+        Set<String> projection = toProjection(fields);
+        int requestHash = SearchCursor.requestHash(query, pageSize, projection);
+        cursorSearchers.prune(cursorMaxAgeSec);
+        if (cursor == null) {
+            return execute(searcher -> {
+                QueryResultCache.Result first = collect(searcher, query, pageSize, projection);
+                // The searcher is only pinned in case there is a next page to read from it.
+                return toPage(() -> cursorSearchers.record(searcher), requestHash, first.topDocs, first.docs, pageSize);
+            });
+        }
+
+        SearchCursor from = SearchCursor.decode(cursor);
+        if (from.getRequestHash() != requestHash) {
+            throw new IllegalArgumentException("Cursor belongs to a different query, page size or set of fields.");
+        }
+        IndexSearcher searcher = cursorSearchers.acquire(from.getSearcherToken());
+        if (searcher == null) {
+            throw new IllegalArgumentException("Cursor has expired. Search again from the first page.");
+        }
+        try {
+            long start = System.nanoTime();
+            TopDocs topDocs = searcher.searchAfter(from.getAfter(), query, pageSize);
+            long searched = System.nanoTime();
+            List<Document> docs = loader.load(searcher, topDocs.scoreDocs, projection);
+            stats.recordSearch(searcher, query, searched - start, System.nanoTime() - searched, topDocs.totalHits);
+            return toPage(from::getSearcherToken, requestHash, topDocs, docs, pageSize);
+        } finally {
+            cursorSearchers.release(searcher);
+        }
+    }
+
+    /**
+     * @param searcherToken Token of the pinned searcher. Only asked for in case there is a next page.
+     */
+    private Page toPage(LongSupplier searcherToken, int requestHash, TopDocs topDocs, List<Document> docs, int pageSize) {
+        ScoreDoc[] scoreDocs = topDocs.scoreDocs;
+        // A short page is the last one.
+        String next = scoreDocs.length < pageSize ? null
+                : new SearchCursor(searcherToken.getAsLong(), requestHash, scoreDocs[scoreDocs.length - 1]).encode();
+        return new Page(docs, topDocs.totalHits, next);
+    }
+
+    /**
+     * Search the query and load the hits, recording the time taken by each into the {@link QueryStats}.
+     * Results served from the cache are recorded as well, with the time taken by the cache.
+     */
+    private QueryResultCache.Result collect(IndexSearcher searcher, Query query, int numResults, Set<String> fields) throws IOException {
+        long start = System.nanoTime();
+        QueryResultCache.Result cached = null;
+        Object generation = null;
+        if (cache != null) {
+            generation = generationOf(searcher);
+            cached = cache.get(generation, query, numResults, fields);
+            if (cached != null && cached.docs != null) {
+                stats.recordSearch(searcher, query, System.nanoTime() - start, 0, cached.topDocs.totalHits);
+                return cached;
+            }
+        }
+        TopDocs topDocs = cached != null ? cached.topDocs : searcher.search(query, numResults);
+        long searched = System.nanoTime();
+        List<Document> docs = loader.load(searcher, topDocs.scoreDocs, fields);
+        stats.recordSearch(searcher, query, searched - start, System.nanoTime() - searched, topDocs.totalHits);
+        if (cache != null && cached == null) {
+            cache.put(generation, query, numResults, fields, topDocs, docs);
+        }
+        return new QueryResultCache.Result(topDocs, docs);
+    }
+
+    private static Object generationOf(IndexSearcher searcher) {
+        return searcher.getIndexReader().getCombinedCoreAndDeletesKey();
+    }
+
+    /**
+     * Immutable copy of the requested fields, fit to be a part of the cache key. Null for all the stored fields.
+     */
+    private static Set<String> toProjection(Set<String> fields) {
+        return fields == null || fields.isEmpty() ? null : Collections.unmodifiableSet(new HashSet<>(fields));
+    }
+
+    /**
+     * Execute the given function against a searcher acquired from the {@link ReferenceManager}.
+     * The searcher is released once the function returns.
+     *
+     * @param func  Function to be executed.
+     * @param <T>   Type of the result.
+     * @return Result of the function.
+     * @throws IOException In case of low-level IO errors.
+     */
+    public <T> T execute(SearcherFunction<T> func) throws IOException {
+        IndexSearcher indexSearcher = searcherManager.acquire();
+        try {
+            return func.apply(indexSearcher);
+        } finally {
+            searcherManager.release(indexSearcher);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (refresher != null) {
+                refresher.shutdownNow();
+            }
+        }
+        AppUtils.unregisterMBean(QueryStats.JMX_TYPE, stats);
+        cursorSearchers.close();
+        searcherManager.removeListener(cacheAdvancer);
+        if (ownsManager) {
+            searcherManager.close();
+        }
+    }
+
+    /**
+     * Pool shared by the searchers, created on first use.
+     */
+    private static final class SearchExecutorHolder {
+        static final ExecutorService EXECUTOR = createExecutor();
+
+        private static ExecutorService createExecutor() {
+            int threads = AppUtils.getIntProperty(AppConstants.PROP_SEARCH_THREADS, AppConstants.DEFAULT_SEARCH_THREADS);
+            if (threads <= 1) {
+                return null;
+            }
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newFixedThreadPool(threads, r -> {
+                Thread thread = new Thread(r, "searcher-" + count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Page of search results.
+     */
+    public static class Page {
+        public final List<Document> docs;
+        public final int totalHits;
+        public final String nextCursor;
+
+        Page(List<Document> docs, int totalHits, String nextCursor) {
+            this.docs = docs;
+            this.totalHits = totalHits;
+            this.nextCursor = nextCursor;
+        }
+
+        /**
+         * @return Are there more results after this page?
+         */
+        public boolean hasNext() {
+            return nextCursor != null;
+        }
+    }
+}
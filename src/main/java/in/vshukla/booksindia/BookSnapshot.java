@@ -0,0 +1,268 @@
+package in.vshukla.booksindia;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Read-only, columnar copy of the book table in a local file, written by {@link SnapshotWriter}.
+ * Rebuilding the index from a snapshot leaves the database alone and runs at the speed of the disk.
+ *
+ * Layout of the file. All the numbers are big endian.
+ * <pre>
+ * magic (int), version (int), header length (int)
+ * header : rows (long), rows per block (int), blocks (int), columns (int), and for every column
+ *          name (modified UTF-8), start of its data (long), length of its data (long), start of every block (long[])
+ * data   : the columns one after the other. Every value is its length in bytes (int, -1 for null) and its UTF-8 bytes.
+ * </pre>
+ * Starts of data are relative to the end of the header, and starts of blocks to the start of their column.
+ * The block starts are the offset index. They allow the rows to be split into ranges of blocks, read independently.
+ *
+ * Rows are read straight out of the file mapped using {@link FileChannel#map}, without reading it into buffers.
+ * {@link #stream()} splits the rows into ranges of blocks, so that a parallel stream reads a range per thread.
+ */
+public class BookSnapshot implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BookSnapshot.class);
+
+    static final int MAGIC = 0x424B534E;
+
+    static final int VERSION = 1;
+
+    // Magic, version and header length.
+    static final int PREFIX_BYTES = 3 * Integer.BYTES;
+
+    static final int BLOCK_ROWS = 1024;
+
+    static final int NULL_LENGTH = -1;
+
+    // Bytes of a column mapped at once, well under the 2 GB limit of a mapping.
+    private static final long MAX_MAP_BYTES = 256L * 1024 * 1024;
+
+    private final Path file;
+
+    private final FileChannel channel;
+
+    private final long rowCount;
+
+    private final int blockRows;
+
+    private final int blockCount;
+
+    private final String[] columns;
+
+    // Position of every column in the file, and the start of every block relative to it.
+    private final long[] columnStarts;
+
+    private final long[] columnLengths;
+
+    private final long[][] blockOffsets;
+
+    private BookSnapshot(Path file, FileChannel channel) throws IOException {
+        this.file = file;
+        this.channel = channel;
+        MappedByteBuffer prefix = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), PREFIX_BYTES));
+        if (prefix.remaining() < PREFIX_BYTES || prefix.getInt() != MAGIC) {
+            throw new IOException("Snapshot : Not a snapshot " + file);
+        }
+        int version = prefix.getInt();
+        if (version != VERSION) {
+            throw new IOException("Snapshot : Unsupported version " + version + " of " + file);
+        }
+        int headerLength = prefix.getInt();
+        byte[] header = new byte[headerLength];
+        channel.map(FileChannel.MapMode.READ_ONLY, PREFIX_BYTES, headerLength).get(header);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(header));
+        this.rowCount = in.readLong();
+        this.blockRows = in.readInt();
+        this.blockCount = in.readInt();
+        int columnCount = in.readInt();
+        this.columns = new String[columnCount];
+        this.columnStarts = new long[columnCount];
+        this.columnLengths = new long[columnCount];
+        this.blockOffsets = new long[columnCount][blockCount];
+        long dataStart = PREFIX_BYTES + headerLength;
+        for (int i = 0; i < columnCount; i++) {
+            columns[i] = in.readUTF();
+            columnStarts[i] = dataStart + in.readLong();
+            columnLengths[i] = in.readLong();
+            for (int b = 0; b < blockCount; b++) {
+                blockOffsets[i][b] = in.readLong();
+            }
+        }
+        long expected = columnCount == 0 ? dataStart : columnStarts[columnCount - 1] + columnLengths[columnCount - 1];
+        if (channel.size() != expected) {
+            throw new IOException("Snapshot : Expected " + expected + " bytes. Found " + channel.size() + " in " + file);
+        }
+    }
+
+    /**
+     * @param file  Snapshot written by {@link SnapshotWriter}.
+     * @return Snapshot open for reading.
+     * @throws IOException In case the file cannot be read or is not a snapshot.
+     */
+    public static BookSnapshot open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            BookSnapshot snapshot = new BookSnapshot(file, channel);
+            LOGGER.info("Snapshot : Opened {}. Rows : {}, Columns : {}", file, snapshot.rowCount, String.join(", ", snapshot.columns));
+            return snapshot;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return Names of the columns, in the order of the values of the rows.
+     */
+    public String[] getColumns() {
+        return columns.clone();
+    }
+
+    /**
+     * All the rows of the snapshot, in the order they were written. The rows share a single array of column names,
+     * as those read from a result set do. Make the stream parallel to read ranges of blocks on multiple threads.
+     *
+     * @return Stream of the rows. IO errors while reading are thrown as {@link UncheckedIOException}.
+     */
+    public Stream<Row> stream() {
+        return StreamSupport.stream(new BlockSpliterator(0, blockCount), false);
+    }
+
+    private long blockStart(int column, int block) {
+        return block == blockCount ? columnLengths[column] : blockOffsets[column][block];
+    }
+
+    private long rowsBefore(int block) {
+        return Math.min(rowCount, (long) block * blockRows);
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Mappings already handed out stay valid till they are collected.
+        channel.close();
+    }
+
+    /**
+     * Rows of a range of blocks. The columns of a window of blocks are mapped at a time, the window being as large as
+     * {@link #MAX_MAP_BYTES} allows. Splits hand over the first half of the blocks, as the rows are ordered. So, only a
+     * spliterator which has not mapped any of its blocks yet is split.
+     */
+    private class BlockSpliterator implements Spliterator<Row> {
+
+        private int nextBlock;
+
+        private int endBlock;
+
+        // Rows left in the mapped window, and the mapped window of every column.
+        private long windowRows;
+
+        private final ByteBuffer[] window = new ByteBuffer[columns.length];
+
+        private byte[] scratch = new byte[256];
+
+        BlockSpliterator(int fromBlock, int toBlock) {
+            this.nextBlock = fromBlock;
+            this.endBlock = toBlock;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Row> action) {
+            if (windowRows == 0 && !mapNextWindow()) {
+                return false;
+            }
+            String[] values = new String[columns.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = readValue(window[i]);
+            }
+            windowRows--;
+            action.accept(new Row(columns, values));
+            return true;
+        }
+
+        private String readValue(ByteBuffer buffer) {
+            int length = buffer.getInt();
+            if (length == NULL_LENGTH) {
+                return null;
+            }
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(scratch, 0, length);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        private boolean mapNextWindow() {
+            if (nextBlock >= endBlock) {
+                return false;
+            }
+            int to = nextBlock + 1;
+            while (to < endBlock && fits(nextBlock, to + 1)) {
+                to++;
+            }
+            try {
+                for (int i = 0; i < columns.length; i++) {
+                    long start = blockStart(i, nextBlock);
+                    window[i] = channel.map(FileChannel.MapMode.READ_ONLY, columnStarts[i] + start, blockStart(i, to) - start);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Snapshot : Unable to map " + file, e);
+            }
+            windowRows = rowsBefore(to) - rowsBefore(nextBlock);
+            nextBlock = to;
+            return true;
+        }
+
+        private boolean fits(int fromBlock, int toBlock) {
+            for (int i = 0; i < columns.length; i++) {
+                if (blockStart(i, toBlock) - blockStart(i, fromBlock) > MAX_MAP_BYTES) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Spliterator<Row> trySplit() {
+            int remaining = endBlock - nextBlock;
+            if (windowRows > 0 || remaining < 2) {
+                return null;
+            }
+            int mid = nextBlock + remaining / 2;
+            BlockSpliterator prefix = new BlockSpliterator(nextBlock, mid);
+            nextBlock = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return windowRows + rowsBefore(endBlock) - rowsBefore(nextBlock);
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL | IMMUTABLE | SIZED | SUBSIZED;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package in.vshukla.booksindia;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.CharArraySet;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.suggest.DocumentDictionary;
+import org.apache.lucene.search.suggest.Lookup;
+import org.apache.lucene.search.suggest.analyzing.AnalyzingSuggester;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Completes partial titles, and optionally ISBNs, as they are typed.
+ *
+ * Built from the stored values of the {@value AppConstants#PROP_SUGGEST_FIELDS} fields into one in-memory FST per field
+ * using {@link AnalyzingSuggester}. A lookup walks the FST and touches neither the index nor the disk.
+ * The input is analyzed as the titles are, so case and punctuation do not matter.
+ *
+ * The suggester listens to the refreshes of the searcher it is built from. Once the searcher sees new commits, the
+ * suggester is rebuilt in the background and swapped in. Lookups keep using the old one in the meanwhile.
+ * Rebuilds are at least {@value AppConstants#PROP_SUGGEST_REBUILD_SEC} seconds apart, as a near-real-time searcher
+ * may be refreshed several times a second.
+ */
+public class BookSuggester implements ReferenceManager.RefreshListener, Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BookSuggester.class);
+
+    // Books sharing a title are separate entries of the suggester. Fetching a few more than asked for leaves enough
+    // after dropping the repeats.
+    private static final int OVERFETCH = 4;
+
+    private final ReferenceManager<IndexSearcher> searcherManager;
+
+    private final List<String> fields;
+
+    private final Directory tempDir;
+
+    private final ScheduledThreadPoolExecutor builder;
+
+    private final long rebuildIntervalNanos;
+
+    private final AtomicBoolean rebuildPending = new AtomicBoolean();
+
+    private volatile long lastBuildNanos;
+
+    private volatile Map<String, Lookup> lookups = Collections.emptyMap();
+
+    /**
+     * Build the suggester for the given fields and keep it up to date with the searcher.
+     *
+     * @param searcherManager   Manager of the searcher over the index.
+     * @param fields            Stored fields to be completed.
+     * @param rebuildSec        Minimum seconds between two rebuilds.
+     * @throws IOException In case of low-level IO errors while building.
+     */
+    public BookSuggester(ReferenceManager<IndexSearcher> searcherManager, List<String> fields, int rebuildSec) throws IOException {
+        AppUtils.nullCheck(searcherManager, "Suggest : Cannot work without a searcher.");
+        if (fields == null || fields.isEmpty()) {
+            throw new IllegalArgumentException("Suggest : No fields to be suggested.");
+        }
+        this.searcherManager = searcherManager;
+        this.fields = new ArrayList<>(fields);
+        this.tempDir = FSDirectory.open(Paths.get(System.getProperty("java.io.tmpdir")));
+        this.rebuildIntervalNanos = Math.max(0, rebuildSec) * 1_000_000_000L;
+        this.builder = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "suggest-build");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Rebuilds still waiting are dropped on close.
+        builder.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        build();
+        searcherManager.addListener(this);
+    }
+
+    /**
+     * @param bookSearcher Searcher over the index.
+     * @return Suggester for the fields listed in {@value AppConstants#PROP_SUGGEST_FIELDS}.
+     * @throws IOException In case of low-level IO errors while building.
+     */
+    public static BookSuggester create(BookSearcher bookSearcher) throws IOException {
+        String fields = AppUtils.getProperty(AppConstants.PROP_SUGGEST_FIELDS, () -> AppConstants.DEFAULT_SUGGEST_FIELDS);
+        List<String> names = new ArrayList<>();
+        for (String field : fields.split(",")) {
+            if (!field.trim().isEmpty()) {
+                names.add(field.trim());
+            }
+        }
+        return new BookSuggester(bookSearcher.getSearcherManager(), names,
+                AppUtils.getIntProperty(AppConstants.PROP_SUGGEST_REBUILD_SEC, AppConstants.DEFAULT_SUGGEST_REBUILD_SEC));
+    }
+
+    /**
+     * Rebuild the suggester from the current searcher.
+     *
+     * @throws IOException In case of low-level IO errors.
+     */
+    public void build() throws IOException {
+        long start = System.nanoTime();
+        Map<String, Lookup> built = new HashMap<>();
+        IndexSearcher searcher = searcherManager.acquire();
+        try {
+            for (String field : fields) {
+                Analyzer analyzer = new StandardAnalyzer(CharArraySet.EMPTY_SET);
+                AnalyzingSuggester suggester = new AnalyzingSuggester(tempDir, "suggest-" + field, analyzer);
+                suggester.build(new DocumentDictionary(searcher.getIndexReader(), field, null).getEntryIterator());
+                built.put(field, suggester);
+            }
+        } finally {
+            searcherManager.release(searcher);
+        }
+        lookups = built;
+        lastBuildNanos = System.nanoTime();
+        LOGGER.info("Suggest : Built suggester for {} in {} ms. Entries : {}, Size : {} KB", fields,
+                (System.nanoTime() - start) / 1_000_000, getCount(), getRamBytesUsed() / 1024);
+    }
+
+    /**
+     * Complete the given prefix of the {@value AppConstants#FIELD_TITLE}.
+     *
+     * @see #suggest(String, String, int)
+     */
+    public List<String> suggest(String prefix, int count) throws IOException {
+        return suggest(AppConstants.FIELD_TITLE, prefix, count);
+    }
+
+    /**
+     * Complete the given prefix of a field.
+     *
+     * @param field     Field to be completed. Should be one of the fields the suggester was built for.
+     * @param prefix    Text typed so far.
+     * @param count     Maximum number of completions.
+     * @return Distinct completions, best first.
+     * @throws IOException In case of errors while analyzing the prefix.
+     */
+    public List<String> suggest(String field, String prefix, int count) throws IOException {
+        Lookup lookup = lookups.get(field);
+        if (lookup == null) {
+            throw new IllegalArgumentException("Suggest : Field is not suggested " + field);
+        }
+        if (prefix == null || prefix.trim().isEmpty() || count < 1) {
+            return Collections.emptyList();
+        }
+        Set<String> completions = new LinkedHashSet<>();
+        for (Lookup.LookupResult result : lookup.lookup(prefix, false, count * OVERFETCH)) {
+            completions.add(result.key.toString());
+            if (completions.size() == count) {
+                break;
+            }
+        }
+        return new ArrayList<>(completions);
+    }
+
+    /**
+     * @return Number of entries over all the fields.
+     */
+    public long getCount() throws IOException {
+        long count = 0;
+        for (Lookup lookup : lookups.values()) {
+            count += lookup.getCount();
+        }
+        return count;
+    }
+
+    public long getRamBytesUsed() {
+        long bytes = 0;
+        for (Lookup lookup : lookups.values()) {
+            bytes += lookup.ramBytesUsed();
+        }
+        return bytes;
+    }
+
+    @Override
+    public void beforeRefresh() {
+    }
+
+    @Override
+    public void afterRefresh(boolean didRefresh) {
+        // Refreshes arriving while a rebuild is queued are covered by it.
+        if (didRefresh && !builder.isShutdown() && rebuildPending.compareAndSet(false, true)) {
+            long delay = Math.max(0, lastBuildNanos + rebuildIntervalNanos - System.nanoTime());
+            builder.schedule(this::rebuild, delay, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void rebuild() {
+        rebuildPending.set(false);
+        try {
+            build();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Suggest : Unable to rebuild the suggester.", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        searcherManager.removeListener(this);
+        // Not interrupting a running rebuild, as that closes the files it is sorting with.
+        builder.shutdown();
+        try {
+            builder.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        tempDir.close();
+    }
+}
@@ -0,0 +1,252 @@
+package in.vshukla.booksindia;
+
+import in.vshukla.booksindia.exceptions.AppRuntimeException;
+import org.postgresql.PGConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads a CSV/TSV dump of books into the book table.
+ * Two modes are supported.
+ * batch : Rows are parsed here and inserted using a batched {@link PreparedStatement}.
+ * copy  : The file is streamed as is to the server using PostgreSQL {@code COPY FROM STDIN}.
+ *
+ * The columns of the file are expected in the order id, isbn, title, gr_id, review.
+ * Usage : BulkLoader &lt;file&gt; [batch|copy]
+ */
+public class BulkLoader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkLoader.class);
+
+    private static final String COLUMNS = "id, isbn, title, gr_id, review";
+    private static final String INSERT_SQL = "INSERT INTO book (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?)";
+    private static final String COPY_SQL = "COPY book (" + COLUMNS + ") FROM STDIN WITH (FORMAT csv, HEADER %s, DELIMITER %s)";
+    private static final int NUM_COLUMNS = 5;
+
+    public enum Mode {
+        BATCH, COPY
+    }
+
+    private final DbConnection dbConnection;
+    private final char delimiter;
+    private final boolean header;
+
+    /**
+     * @param dbConnection  Connection pool to load into.
+     * @param delimiter     Field delimiter of the file. Usually ',' or '\t'.
+     * @param header        Does the first line of the file hold the column names?
+     */
+    public BulkLoader(DbConnection dbConnection, char delimiter, boolean header) {
+        AppUtils.nullCheck(dbConnection, "Load : Cannot work with a null DB connection.");
+        this.dbConnection = dbConnection;
+        this.delimiter = delimiter;
+        this.header = header;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            LOGGER.error("Usage : BulkLoader <file> [batch|copy]");
+            return;
+        }
+        String file = args[0];
+        Mode mode = args.length > 1 ? Mode.valueOf(args[1].trim().toUpperCase()) : Mode.COPY;
+        char delimiter = file.endsWith(".tsv") ? '\t' : ',';
+        boolean header = Boolean.parseBoolean(AppUtils.getProperty(AppConstants.PROP_LOAD_HEADER, () -> AppConstants.DEFAULT_LOAD_HEADER));
+
+        DbConnection dbConnection = DbConnection.getInstance();
+        BulkLoader loader = new BulkLoader(dbConnection, delimiter, header);
+        try {
+            if (mode == Mode.BATCH) {
+                loader.loadBatched(file,
+                        AppUtils.getIntProperty(AppConstants.PROP_LOAD_BATCH_SIZE, AppConstants.DEFAULT_LOAD_BATCH_SIZE),
+                        AppUtils.getIntProperty(AppConstants.PROP_LOAD_COMMIT_INTERVAL, AppConstants.DEFAULT_LOAD_COMMIT_INTERVAL));
+            } else {
+                loader.loadCopy(file);
+            }
+        } catch (SQLException e) {
+            LOGGER.error("Load : Caught SQL Exception", e);
+        } catch (IOException e) {
+            LOGGER.error("Load : IO Exception while reading {}", file, e);
+        } finally {
+            dbConnection.close();
+        }
+    }
+
+    /**
+     * Insert the rows of the given file using batched prepared statements.
+     *
+     * @param file              File to be loaded.
+     * @param batchSize         Number of rows sent to the server in one round trip.
+     * @param commitInterval    Number of rows after which the transaction is committed.
+     * @return Number of rows loaded.
+     * @throws SQLException In case of errors while inserting.
+     * @throws IOException  In case of errors while reading the file.
+     */
+    public long loadBatched(String file, final int batchSize, final int commitInterval) throws SQLException, IOException {
+        if (batchSize < 1 || commitInterval < 1) {
+            throw new IllegalArgumentException("Load : Batch size and commit interval should be positive.");
+        }
+        long start = System.nanoTime();
+        long rows;
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+            if (header) {
+                readRecord(reader);
+            }
+            rows = dbConnection.withConnection(conn -> {
+                long count = 0;
+                try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
+                    List<String> record;
+                    while ((record = readRecordUnchecked(reader)) != null) {
+                        bind(stmt, record, count);
+                        stmt.addBatch();
+                        count++;
+                        if (count % batchSize == 0) {
+                            stmt.executeBatch();
+                        }
+                        if (count % commitInterval == 0) {
+                            stmt.executeBatch();
+                            conn.commit();
+                            LOGGER.info("Load : Committed {} rows.", count);
+                        }
+                    }
+                    stmt.executeBatch();
+                    conn.commit();
+                }
+                return count;
+            });
+        }
+        report(Mode.BATCH, rows, start);
+        return rows;
+    }
+
+    /**
+     * Stream the given file to the server using {@code COPY FROM STDIN}.
+     * The whole file is loaded in a single transaction.
+     *
+     * @param file  File to be loaded.
+     * @return Number of rows loaded.
+     * @throws SQLException In case of errors while copying.
+     * @throws IOException  In case of errors while reading the file.
+     */
+    public long loadCopy(String file) throws SQLException, IOException {
+        final String sql = String.format(COPY_SQL, header, delimiter == '\t' ? "E'\\t'" : "'" + delimiter + "'");
+        long start = System.nanoTime();
+        long rows;
+        try (Reader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+            rows = dbConnection.withConnection(conn -> {
+                try {
+                    long count = ((PGConnection) conn).getCopyAPI().copyIn(sql, reader);
+                    conn.commit();
+                    return count;
+                } catch (IOException e) {
+                    throw new AppRuntimeException("Load : Unable to read " + file, e);
+                }
+            });
+        }
+        report(Mode.COPY, rows, start);
+        return rows;
+    }
+
+    private void report(Mode mode, long rows, long startNanos) {
+        long elapsedMs = Math.max(1, (System.nanoTime() - startNanos) / 1_000_000);
+        LOGGER.info("Load : {} mode loaded {} rows in {} ms ({} rows/sec).", mode, rows, elapsedMs, rows * 1000 / elapsedMs);
+    }
+
+    private void bind(PreparedStatement stmt, List<String> record, long lineNo) throws SQLException {
+        if (record.size() != NUM_COLUMNS) {
+            throw new SQLException("Load : Expected " + NUM_COLUMNS + " columns, found " + record.size() + " in record " + lineNo);
+        }
+        String id = record.get(0);
+        try {
+            stmt.setInt(1, Integer.parseInt(id == null ? "" : id.trim()));
+        } catch (NumberFormatException e) {
+            throw new SQLException("Load : Invalid id '" + id + "' in record " + lineNo, e);
+        }
+        for (int i = 1; i < NUM_COLUMNS; i++) {
+            String value = record.get(i);
+            if (value == null) {
+                stmt.setNull(i + 1, Types.VARCHAR);
+            } else {
+                stmt.setString(i + 1, value);
+            }
+        }
+    }
+
+    private List<String> readRecordUnchecked(BufferedReader reader) {
+        try {
+            return readRecord(reader);
+        } catch (IOException e) {
+            throw new AppRuntimeException("Load : Unable to read record.", e);
+        }
+    }
+
+    /**
+     * Read one CSV record. Quoted values may contain the delimiter, doubled quotes and line breaks.
+     * As with {@code COPY} in CSV format, an unquoted empty value is NULL while a quoted one is an empty string.
+     *
+     * @param reader    Source of the records.
+     * @return Values of the record, null for the NULL ones. Null at the end of input.
+     * @throws IOException In case of errors while reading.
+     */
+    private List<String> readRecord(BufferedReader reader) throws IOException {
+        String line = reader.readLine();
+        if (line == null) {
+            return null;
+        }
+        List<String> values = new ArrayList<>(NUM_COLUMNS);
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        boolean wasQuoted = false;
+        while (true) {
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (quoted) {
+                    if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        value.append('"');
+                        i++;
+                    } else if (c == '"') {
+                        quoted = false;
+                    } else {
+                        value.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                    wasQuoted = true;
+                } else if (c == delimiter) {
+                    values.add(toValue(value, wasQuoted));
+                    value.setLength(0);
+                    wasQuoted = false;
+                } else {
+                    value.append(c);
+                }
+            }
+            if (!quoted) {
+                break;
+            }
+            // Line break inside a quoted value.
+            line = reader.readLine();
+            if (line == null) {
+                throw new IOException("Load : Unterminated quoted value at the end of file.");
+            }
+            value.append('\n');
+        }
+        values.add(toValue(value, wasQuoted));
+        return values;
+    }
+
+    private static String toValue(StringBuilder value, boolean wasQuoted) {
+        return value.length() == 0 && !wasQuoted ? null : value.toString();
+    }
+}
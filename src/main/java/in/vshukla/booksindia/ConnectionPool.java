@@ -0,0 +1,339 @@
+package in.vshukla.booksindia;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded pool of JDBC connections.
+ * Connections are validated when borrowed, dropped when found broken and replaced by fresh ones.
+ * Connections lying idle for longer than the idle timeout are closed by a background thread.
+ * Every connection keeps a {@link StatementCache} of its own, closed along with the connection.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConnectionPool.class);
+
+    /**
+     * Creates a new physical connection.
+     */
+    @FunctionalInterface
+    public interface ConnectionFactory {
+        Connection create() throws SQLException;
+    }
+
+    private final ConnectionFactory factory;
+    private final int maxSize;
+    private final long borrowTimeoutMs;
+    private final long idleTimeoutMs;
+    private final int validationTimeoutSec;
+    private final int statementCacheSize;
+    private final int prepareThreshold;
+
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<IdleConnection> idle = new LinkedBlockingDeque<>();
+    private final ScheduledExecutorService evictor;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final Map<Connection, StatementCache> statementCaches = new ConcurrentHashMap<>();
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder borrowCount = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder timeoutCount = new LongAdder();
+    private final LongAdder createdCount = new LongAdder();
+    private final LongAdder destroyedCount = new LongAdder();
+    private final LongAdder statementHits = new LongAdder();
+    private final LongAdder statementMisses = new LongAdder();
+
+    /**
+     * @param factory               Used to open new connections.
+     * @param maxSize               Maximum number of connections, both idle and in use.
+     * @param borrowTimeoutMs       Maximum time to wait for a free connection.
+     * @param idleTimeoutMs         Idle connections older than this are closed.
+     * @param validationTimeoutSec  Time allowed to a connection to prove it is alive when borrowed.
+     */
+    public ConnectionPool(ConnectionFactory factory, int maxSize, long borrowTimeoutMs, long idleTimeoutMs, int validationTimeoutSec) {
+        this(factory, maxSize, borrowTimeoutMs, idleTimeoutMs, validationTimeoutSec, 0, 0);
+    }
+
+    /**
+     * @param factory               Used to open new connections.
+     * @param maxSize               Maximum number of connections, both idle and in use.
+     * @param borrowTimeoutMs       Maximum time to wait for a free connection.
+     * @param idleTimeoutMs         Idle connections older than this are closed.
+     * @param validationTimeoutSec  Time allowed to a connection to prove it is alive when borrowed.
+     * @param statementCacheSize    Prepared statements kept open per connection. 0 to not keep any.
+     * @param prepareThreshold      Runs after which a statement is prepared on the server. 0 for the driver default.
+     */
+    public ConnectionPool(ConnectionFactory factory, int maxSize, long borrowTimeoutMs, long idleTimeoutMs, int validationTimeoutSec,
+                          int statementCacheSize, int prepareThreshold) {
+        AppUtils.nullCheck(factory, "DB : Cannot create a pool without a connection factory.");
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("DB : Pool size should be positive. Found " + maxSize);
+        }
+        this.factory = factory;
+        this.maxSize = maxSize;
+        this.borrowTimeoutMs = borrowTimeoutMs;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.validationTimeoutSec = validationTimeoutSec;
+        this.statementCacheSize = statementCacheSize;
+        this.prepareThreshold = prepareThreshold;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "db-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000, idleTimeoutMs / 2);
+        this.evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+        LOGGER.info("DB : Connection pool created. Max size : {}, Borrow timeout : {} ms, Idle timeout : {} ms, Statement cache : {}",
+                maxSize, borrowTimeoutMs, idleTimeoutMs, statementCacheSize);
+    }
+
+    /**
+     * Check out a connection. Waits for at most the borrow timeout in case all the connections are in use.
+     * Every borrowed connection must be handed back using {@link #release(Connection)}.
+     *
+     * @return A validated connection.
+     * @throws SQLException In case of timeouts or failure to open a new connection.
+     */
+    public Connection borrow() throws SQLException {
+        if (closed.get()) {
+            throw new SQLException("DB : Connection pool is closed.");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMs, TimeUnit.MILLISECONDS)) {
+                timeoutCount.increment();
+                throw new SQLException("DB : Timed out after " + borrowTimeoutMs + " ms waiting for a connection.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("DB : Interrupted while waiting for a connection.", e);
+        }
+        long waited = System.nanoTime() - start;
+        waitNanos.add(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+        borrowCount.increment();
+
+        try {
+            Connection connection = takeValidIdle();
+            if (connection == null) {
+                connection = factory.create();
+                createdCount.increment();
+            }
+            active.incrementAndGet();
+            return connection;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Hand back a borrowed connection. Any open transaction is rolled back.
+     * Connections which fail to roll back are considered broken and are closed.
+     *
+     * @param connection Connection obtained from {@link #borrow()}.
+     */
+    public void release(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        active.decrementAndGet();
+        try {
+            boolean reusable = !closed.get() && resetQuietly(connection);
+            if (reusable) {
+                idle.offerFirst(new IdleConnection(connection));
+            } else {
+                destroy(connection);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * @param connection Connection obtained from {@link #borrow()}, and not yet released.
+     * @return Cache of the prepared statements of the connection.
+     */
+    public StatementCache getStatementCache(Connection connection) {
+        return statementCaches.computeIfAbsent(connection,
+                c -> new StatementCache(c, statementCacheSize, prepareThreshold, statementHits, statementMisses));
+    }
+
+    /**
+     * @return Snapshot of the pool usage.
+     */
+    public Stats getStats() {
+        return new Stats(maxSize, active.get(), idle.size(), borrowCount.sum(), waitNanos.sum(),
+                maxWaitNanos.get(), timeoutCount.sum(), createdCount.sum(), destroyedCount.sum(),
+                statementHits.sum(), statementMisses.sum());
+    }
+
+    /**
+     * Close the pool along with all the idle connections.
+     * Connections in use are closed as and when they are released.
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        evictor.shutdownNow();
+        IdleConnection idleConnection;
+        while ((idleConnection = idle.pollFirst()) != null) {
+            destroy(idleConnection.connection);
+        }
+        LOGGER.info("DB : Connection pool closed. {}", getStats());
+    }
+
+    /**
+     * Pick the most recently used idle connection which is still alive.
+     * Dead ones are discarded on the way so that a fresh connection gets opened instead.
+     */
+    private Connection takeValidIdle() {
+        IdleConnection idleConnection;
+        while ((idleConnection = idle.pollFirst()) != null) {
+            if (isValid(idleConnection.connection)) {
+                return idleConnection.connection;
+            }
+            LOGGER.warn("DB : Discarding a broken connection.");
+            destroy(idleConnection.connection);
+        }
+        return null;
+    }
+
+    private boolean isValid(Connection connection) {
+        try {
+            return !connection.isClosed() && connection.isValid(validationTimeoutSec);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private boolean resetQuietly(Connection connection) {
+        try {
+            if (connection.isClosed()) {
+                return false;
+            }
+            connection.rollback();
+            return true;
+        } catch (SQLException e) {
+            LOGGER.warn("DB : Unable to reset the connection. Discarding it.", e);
+            return false;
+        }
+    }
+
+    private void destroy(Connection connection) {
+        destroyedCount.increment();
+        StatementCache statementCache = statementCaches.remove(connection);
+        if (statementCache != null) {
+            statementCache.close();
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            LOGGER.debug("DB : Error closing the connection.", e);
+        }
+    }
+
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        Iterator<IdleConnection> iterator = idle.iterator();
+        while (iterator.hasNext()) {
+            IdleConnection idleConnection = iterator.next();
+            if (now - idleConnection.since > idleTimeoutMs && idle.removeFirstOccurrence(idleConnection)) {
+                LOGGER.debug("DB : Evicting a connection idle since {} ms.", now - idleConnection.since);
+                destroy(idleConnection.connection);
+            }
+        }
+    }
+
+    private static class IdleConnection {
+        final Connection connection;
+        final long since = System.currentTimeMillis();
+
+        IdleConnection(Connection connection) {
+            this.connection = connection;
+        }
+    }
+
+    /**
+     * Point in time view of the pool, used for sizing it.
+     */
+    public static class Stats {
+        public final int maxSize, active, idle;
+        public final long borrows, totalWaitNanos, maxWaitNanos, timeouts, created, destroyed;
+        public final long statementHits, statementMisses;
+
+        Stats(int maxSize, int active, int idle, long borrows, long totalWaitNanos, long maxWaitNanos,
+              long timeouts, long created, long destroyed, long statementHits, long statementMisses) {
+            this.maxSize = maxSize;
+            this.active = active;
+            this.idle = idle;
+            this.borrows = borrows;
+            this.totalWaitNanos = totalWaitNanos;
+            this.maxWaitNanos = maxWaitNanos;
+            this.timeouts = timeouts;
+            this.created = created;
+            this.destroyed = destroyed;
+            this.statementHits = statementHits;
+            this.statementMisses = statementMisses;
+        }
+
+        /**
+         * @return Fraction of the pool currently checked out.
+         */
+        public double getUtilisation() {
+            return (double) active / maxSize;
+        }
+
+        /**
+         * @return Fraction of the prepared statements served from the statement caches.
+         */
+        public double getStatementHitRatio() {
+            long total = statementHits + statementMisses;
+            return total == 0 ? 0 : (double) statementHits / total;
+        }
+
+        /**
+         * @return Average time spent waiting for a connection in milliseconds.
+         */
+        public double getAvgWaitMs() {
+            return borrows == 0 ? 0 : totalWaitNanos / 1e6 / borrows;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "maxSize=" + maxSize +
+                    ", active=" + active +
+                    ", idle=" + idle +
+                    ", borrows=" + borrows +
+                    ", avgWaitMs=" + String.format("%.3f", getAvgWaitMs()) +
+                    ", maxWaitMs=" + String.format("%.3f", maxWaitNanos / 1e6) +
+                    ", timeouts=" + timeouts +
+                    ", created=" + created +
+                    ", destroyed=" + destroyed +
+                    ", statementHitRatio=" + String.format("%.3f", getStatementHitRatio()) +
+                    '}';
+        }
+    }
+}
@@ -10,15 +10,23 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static in.vshukla.booksindia.AppUtils.blankStringCheck;
 
 /**
  * This is a class following singleton pattern.
- * It would be responsible for holding the DbConnection and executing the sql commands against it.
+ * It would be responsible for holding a pool of DB connections and executing the sql commands against them.
+ * Every call checks out a connection from the pool and hands it back once done.
+ * So, several threads can query the database at once.
+ * Queries taking bind parameters are run using prepared statements cached per connection, see {@link StatementCache}.
+ * So, a query run again on the same connection is neither parsed nor planned again.
  *
  * Created by venkatesh on 9/4/17.
  */
@@ -28,7 +36,9 @@ public class DbConnection {
 
     private static final Object lock = new Object();
 
-    private Connection connection;
+    private ConnectionPool pool;
+
+    private DbMetrics metrics;
 
     private final AtomicBoolean isInitialized = new AtomicBoolean(Boolean.FALSE);
 
@@ -70,11 +80,77 @@ public class DbConnection {
             throw new AppRuntimeException("Unable to find sql driver", e);
         }
 
-        DbCred cred = getDbCred();
-        this.connection = getConnection(cred);
+        final DbCred cred = getDbCred();
+        this.pool = new ConnectionPool(() -> getConnection(cred),
+                AppUtils.getIntProperty(AppConstants.PROP_DB_POOL_SIZE, AppConstants.DEFAULT_DB_POOL_SIZE),
+                AppUtils.getIntProperty(AppConstants.PROP_DB_BORROW_TIMEOUT_MS, AppConstants.DEFAULT_DB_BORROW_TIMEOUT_MS),
+                AppUtils.getIntProperty(AppConstants.PROP_DB_IDLE_TIMEOUT_MS, AppConstants.DEFAULT_DB_IDLE_TIMEOUT_MS),
+                AppConstants.DEFAULT_DB_VALIDATION_TIMEOUT_SEC,
+                AppUtils.getIntProperty(AppConstants.PROP_DB_STATEMENT_CACHE_SIZE, AppConstants.DEFAULT_DB_STATEMENT_CACHE_SIZE),
+                AppUtils.getIntProperty(AppConstants.PROP_DB_PREPARE_THRESHOLD, AppConstants.DEFAULT_DB_PREPARE_THRESHOLD));
+        this.metrics = new DbMetrics(pool);
+
+        // Open the first connection right away so that bad credentials are reported early.
+        try {
+            pool.release(pool.borrow());
+        } catch (SQLException e) {
+            LOGGER.error("DB: Unable to open SQL Connection", e);
+            throw new AppRuntimeException("Unable to open SQL Connection.", e);
+        }
+        AppUtils.registerMBean(DbMetrics.JMX_TYPE, metrics);
         this.isInitialized.set(Boolean.TRUE);
     }
 
+    /**
+     * Unit of work to be performed using a pooled connection.
+     *
+     * @param <T> Type of the result.
+     */
+    @FunctionalInterface
+    public interface SqlWork<T> {
+        T apply(Connection conn) throws SQLException;
+    }
+
+    /**
+     * Check out a connection from the pool, perform the given work and hand the connection back.
+     * The connection must not be used after the work returns.
+     * Uncommitted changes are rolled back once the connection returns to the pool.
+     *
+     * @param work  Work to be performed.
+     * @param <T>   Type of the result.
+     * @return      Result of the work.
+     * @throws SQLException In case of errors while borrowing or while performing the work.
+     */
+    public <T> T withConnection(SqlWork<T> work) throws SQLException {
+        connectionCheck();
+        Connection conn = pool.borrow();
+        try {
+            return work.apply(conn);
+        } finally {
+            pool.release(conn);
+        }
+    }
+
+    /**
+     * Get the usage statistics of the connection pool. Helps in sizing the pool.
+     *
+     * @return Snapshot of pool usage.
+     */
+    public ConnectionPool.Stats getPoolStats() {
+        connectionCheck();
+        return pool.getStats();
+    }
+
+    /**
+     * Get the counters and timers of the queries. Also exposed over JMX.
+     *
+     * @return Metrics of this connection.
+     */
+    public DbMetrics getMetrics() {
+        connectionCheck();
+        return metrics;
+    }
+
     /**
      * Create a connection using the given Database credentials.
      *
@@ -123,6 +199,7 @@ public class DbConnection {
 
     /**
      * Execute the given SQL statement. Commit as per the requirement.
+     * Uncommitted changes are rolled back when the connection goes back to the pool.
      * @param sql
      * @param doCommit
      * @throws SQLException
@@ -143,21 +220,54 @@ public class DbConnection {
      */
     public void executeSql(String sql, boolean doCommit, int fetchSize, int fetchDirn) throws SQLException {
 
-        connectionCheck();
         blankStringCheck(sql, "DB : Cannot execute null or empty SQL.");
 
         LOGGER.info("DB : Executing the SQL : {}", sql);
 
-        Statement stmt = connection.createStatement();
-        stmt.setFetchDirection(fetchDirn);
-        stmt.setFetchSize(fetchSize);
-        stmt.executeUpdate(sql);
-        stmt.close();
+        withConnection(conn -> {
+            Statement stmt = conn.createStatement();
+            stmt.setFetchDirection(fetchDirn);
+            stmt.setFetchSize(fetchSize);
+            stmt.executeUpdate(sql);
+            stmt.close();
 
-        if (doCommit) {
-            LOGGER.info("DB : Committing the changes.");
-            connection.commit();
-        }
+            if (doCommit) {
+                LOGGER.info("DB : Committing the changes.");
+                conn.commit();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Execute the given SQL statement with the given bind parameters and commit.
+     *
+     * @see #executeSql(String, List, boolean)
+     */
+    public int executeSql(String sql, List<?> params) throws SQLException {
+        return executeSql(sql, params, true);
+    }
+
+    /**
+     * Execute the given SQL statement with the given bind parameters, using a cached prepared statement.
+     * Uncommitted changes are rolled back when the connection goes back to the pool.
+     *
+     * @param sql       SQL statement, with a ? for every parameter.
+     * @param params    Values of the parameters, in order. Bound using {@link PreparedStatement#setObject(int, Object)}.
+     * @param doCommit  Should the changes be committed?
+     * @return Number of rows changed.
+     * @throws SQLException In case of any errors while execution.
+     */
+    public int executeSql(String sql, List<?> params, boolean doCommit) throws SQLException {
+        blankStringCheck(sql, "DB : Cannot execute null or empty SQL.");
+        LOGGER.debug("DB : Executing the SQL : {} with {}", sql, params);
+        return withStatement(sql, params, (conn, stmt) -> {
+            int rows = stmt.executeUpdate();
+            if (doCommit) {
+                conn.commit();
+            }
+            return rows;
+        });
     }
 
     /**
@@ -169,7 +279,20 @@ public class DbConnection {
      * @throws SQLException
      */
     public void processResult(String sql, Consumer<ResultSet> resultSetConsumer) throws SQLException {
-        processResult(sql, resultSetConsumer, (x) -> true, AppConstants.DEFAULT_FETCH_SIZE, ResultSet.FETCH_FORWARD);
+        processResult(sql, Collections.emptyList(), resultSetConsumer);
+    }
+
+    /**
+     * Process the ResultSet obtained by executing the given SQL with the given bind parameters.
+     * Do this for all the results in the ResultSet
+     *
+     * @param sql   SELECT statement to get the results, with a ? for every parameter.
+     * @param params Values of the parameters, in order.
+     * @param resultSetConsumer Would be called for every result.
+     * @throws SQLException
+     */
+    public void processResult(String sql, List<?> params, Consumer<ResultSet> resultSetConsumer) throws SQLException {
+        processResult(sql, params, resultSetConsumer, (x) -> true, AppConstants.DEFAULT_FETCH_SIZE, ResultSet.FETCH_FORWARD);
     }
 
     /**
@@ -182,7 +305,7 @@ public class DbConnection {
      * @throws SQLException
      */
     public void processResult(String sql, Consumer<ResultSet> resultSetConsumer, final int maxCount) throws SQLException {
-        processResult(sql, resultSetConsumer, (x) -> x < maxCount, AppConstants.DEFAULT_FETCH_SIZE, ResultSet.FETCH_FORWARD);
+        processResult(sql, Collections.emptyList(), resultSetConsumer, (x) -> x < maxCount, AppConstants.DEFAULT_FETCH_SIZE, ResultSet.FETCH_FORWARD);
     }
 
     /**
@@ -197,33 +320,35 @@ public class DbConnection {
      * @throws SQLException
      */
     private void processResult(String sql, Consumer<ResultSet> resultSetConsumer, final int maxCount, final int fetchSize, final int fetchDirn) throws SQLException {
-        processResult(sql, resultSetConsumer, (x) -> x < maxCount, fetchSize, fetchDirn);
+        processResult(sql, Collections.emptyList(), resultSetConsumer, (x) -> x < maxCount, fetchSize, fetchDirn);
     }
 
     /**
      * Process the ResultSet obtained by executing the given SQL.
      *
      * @param sql   SELECT statement to get the results.
+     * @param params Values of the bind parameters, in order.
      * @param resultSetConsumer Would be called for every result.
      * @param selector Predicate deciding which entries to pick up. This is used in the iteration loop. So, first false would break it.
      * @param fetchSize Number of rows to be fetched in one batch. Lesser improves memory footprint at cost of speed.
      * @param fetchDirn Direction for fetching data.
      * @throws SQLException
      */
-    private void processResult(String sql, Consumer<ResultSet> resultSetConsumer, Predicate<Integer> selector, final int fetchSize, final int fetchDirn) throws SQLException {
-        connectionCheck();
+    private void processResult(String sql, List<?> params, Consumer<ResultSet> resultSetConsumer, Predicate<Integer> selector,
+                               final int fetchSize, final int fetchDirn) throws SQLException {
         blankStringCheck(sql, "DB : Cannot execute blank SQL.");
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        withStatement(sql, params, (conn, stmt) -> {
             stmt.setFetchSize(fetchSize);
             stmt.setFetchDirection(fetchDirn);
-            ResultSet results = stmt.executeQuery();
-
-            int count = 0;
-            while (results.next() && selector.test(count)) {
-                resultSetConsumer.accept(results);
-                count++;
+            try (ResultSet results = stmt.executeQuery()) {
+                int count = 0;
+                while (results.next() && selector.test(count)) {
+                    resultSetConsumer.accept(results);
+                    count++;
+                }
             }
-        }
+            return null;
+        });
     }
 
     /**
@@ -235,78 +360,188 @@ public class DbConnection {
      * @throws SQLException
      */
     public void processLargeResultSet(String sql, Consumer<ResultSet> resultSetConsumer) throws SQLException {
-        connectionCheck();
+        processLargeResultSet(sql, Collections.emptyList(), resultSetConsumer);
+    }
+
+    /**
+     * Process the ResultSet obtained by executing the given SQL with the given bind parameters.
+     * Some optimizations are made to deal with large datasets to the order of millions.
+     *
+     * @param sql   SELECT statement to get the results, with a ? for every parameter.
+     * @param params Values of the parameters, in order.
+     * @param resultSetConsumer Would be called for every result.
+     * @throws SQLException
+     */
+    public void processLargeResultSet(String sql, List<?> params, Consumer<ResultSet> resultSetConsumer) throws SQLException {
         blankStringCheck(sql, "DB : Cannot execute blank SQL.");
-        try (PreparedStatement stmt = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+        withStatement(sql, params, (conn, stmt) -> {
+            // Statements are forward only and read only by default. So, they are fit to be cached.
             stmt.setFetchSize(AppConstants.DEFAULT_FETCH_SIZE);
             stmt.setFetchDirection(AppConstants.DEFAULT_FETCH_DIRN);
-            ResultSet results = stmt.executeQuery();
+            try (ResultSet results = stmt.executeQuery()) {
+                metrics.recordQuery();
+
+                // Timing only the fetch, as the consumer may well be slower than the DB.
+                while (true) {
+                    long start = System.nanoTime();
+                    boolean hasRow = results.next();
+                    metrics.recordFetch(System.nanoTime() - start, hasRow);
+                    if (!hasRow) {
+                        break;
+                    }
+                    resultSetConsumer.accept(results);
+                }
+            }
+            return null;
+        });
+    }
 
-            while (results.next()) {
-                resultSetConsumer.accept(results);
+    /**
+     * Work to be performed using a prepared statement and the connection it belongs to.
+     *
+     * @param <T> Type of the result.
+     */
+    @FunctionalInterface
+    private interface StatementWork<T> {
+        T apply(Connection conn, PreparedStatement stmt) throws SQLException;
+    }
+
+    /**
+     * Check out a connection, take the statement of the given SQL from its cache, bind the parameters and perform the
+     * given work. The statement goes back to the cache and the connection to the pool once done.
+     */
+    private <T> T withStatement(String sql, List<?> params, StatementWork<T> work) throws SQLException {
+        return withConnection(conn -> {
+            StatementCache statements = pool.getStatementCache(conn);
+            PreparedStatement stmt = statements.prepare(sql);
+            try {
+                for (int i = 0; i < params.size(); i++) {
+                    stmt.setObject(i + 1, params.get(i));
+                }
+                return work.apply(conn, stmt);
+            } finally {
+                statements.release(stmt);
             }
-        }
+        });
     }
 
     /**
-     * Fetch ResultSet from DB Connection.
+     * Lazily fetch the rows of the given SQL.
      *
-     * @param sql   SELECT statement to be executed
-     * @return      {@link ResultSet} containing the information fetched using given SQL.
-     * @throws SQLException
+     * @see #executeFetch(String, List, int, int)
      */
-    public ResultSet fetchResult(String sql) throws SQLException {
-        connectionCheck();
-        blankStringCheck(sql, "DB : Cannot execute blank SQL.");
-        Statement stmt = connection.createStatement();
-        return executeFetch(sql, AppConstants.DEFAULT_FETCH_SIZE, ResultSet.FETCH_FORWARD);
+    public Stream<Row> fetchResult(String sql) throws SQLException {
+        return fetchResult(sql, Collections.emptyList());
+    }
+
+    /**
+     * Lazily fetch the rows of the given SQL with the given bind parameters.
+     *
+     * @see #executeFetch(String, List, int, int)
+     */
+    public Stream<Row> fetchResult(String sql, List<?> params) throws SQLException {
+        return executeFetch(sql, params, AppConstants.DEFAULT_FETCH_SIZE, AppConstants.DEFAULT_FETCH_DIRN);
     }
 
     /**
-     * Using the given fetchSize and fetchDirection, get the ResultSet.
+     * Lazily fetch the rows of the given SQL, using a cursor on the server. Rows are fetched in batches of the fetch
+     * size as the stream is consumed, so short-circuiting operations like limit stop the fetching.
+     * A parallel stream processes the batches fetched so far on other threads, see {@link ResultSetSpliterator}.
+     *
+     * The stream holds a pooled connection till it is closed. So, it must be closed, preferably using
+     * try-with-resources. The connection is also handed back once the rows run out.
      *
-     * @param sql       SELECT statement to be executed
-     * @param fetchSize Size of the batch of rows to be fetched in one go.
+     * @param sql       SELECT statement to be executed, with a ? for every parameter.
+     * @param params    Values of the parameters, in order.
+     * @param fetchSize Number of rows to be fetched in one go.
      * @param fetchDirn Direction of fetch.
-     * @return
-     * @throws SQLException
+     * @return Stream of the rows, with their values cleaned.
+     * @throws SQLException In case of errors while executing the SQL.
      */
-    public ResultSet executeFetch(String sql, int fetchSize, int fetchDirn) throws SQLException {
-        connectionCheck();
-        blankStringCheck(sql, "DB : Cannot execute blank SQL.");
+    public Stream<Row> executeFetch(String sql, List<?> params, int fetchSize, int fetchDirn) throws SQLException {
+        ResultSetSpliterator rows = openCursor(sql, params, fetchSize, fetchDirn);
+        return StreamSupport.stream(rows, false).onClose(rows::close);
+    }
 
-        Statement stmt = connection.prepareStatement(sql);
-        stmt.setFetchSize(fetchSize);
-        stmt.setFetchDirection(fetchDirn);
-        return stmt.getResultSet();
+    /**
+     * Lazily fetch the rows of the given SQL in batches. Every batch is a round trip to the server, and is handed over
+     * as a whole. So, batches can be indexed or written in parallel while the next ones are fetched.
+     * The stream must be closed, as in {@link #executeFetch(String, List, int, int)}.
+     *
+     * @param sql       SELECT statement to be executed, with a ? for every parameter.
+     * @param params    Values of the parameters, in order.
+     * @param batchSize Number of rows in a batch. Also used as the fetch size.
+     * @return Stream of the batches. Only the last one may be shorter than the batch size.
+     * @throws SQLException In case of errors while executing the SQL.
+     */
+    public Stream<List<Row>> fetchBatches(String sql, List<?> params, int batchSize) throws SQLException {
+        ResultSetSpliterator rows = openCursor(sql, params, batchSize, ResultSet.FETCH_FORWARD);
+        return StreamSupport.stream(rows.batches(), false).onClose(rows::close);
     }
 
     /**
-     * Close the DB connection if open.
+     * Check out a connection and execute the given SQL, keeping the connection till the rows are read.
      */
-    public void close() {
-        if (connection == null) {
-            LOGGER.error("DB : Uninitialized DB Connection.");
-            return;
+    private ResultSetSpliterator openCursor(String sql, List<?> params, int fetchSize, int fetchDirn) throws SQLException {
+        blankStringCheck(sql, "DB : Cannot execute blank SQL.");
+        AppUtils.nullCheck(params, "DB : Cannot bind null parameters.");
+        connectionCheck();
+        Connection conn = pool.borrow();
+        StatementCache statements = pool.getStatementCache(conn);
+        PreparedStatement stmt = null;
+        ResultSet results = null;
+        try {
+            stmt = statements.prepare(sql);
+            for (int i = 0; i < params.size(); i++) {
+                stmt.setObject(i + 1, params.get(i));
+            }
+            // A cursor on the server needs a fetch size, a forward only result set and no auto commit.
+            stmt.setFetchSize(Math.max(1, fetchSize));
+            stmt.setFetchDirection(fetchDirn);
+            results = stmt.executeQuery();
+            metrics.recordQuery();
+        } catch (SQLException | RuntimeException e) {
+            closeCursor(conn, statements, stmt, results);
+            throw e;
         }
+        PreparedStatement cursorStmt = stmt;
+        ResultSet cursorResults = results;
+        return new ResultSetSpliterator(results, fetchSize, metrics, () -> closeCursor(conn, statements, cursorStmt, cursorResults));
+    }
 
+    /**
+     * Close the result set and hand the statement back to its cache and the connection back to the pool.
+     * Errors are logged, as there is nothing more to be done with the cursor.
+     */
+    private void closeCursor(Connection conn, StatementCache statements, PreparedStatement stmt, ResultSet results) {
         try {
-             if (connection.isClosed()) {
-                LOGGER.warn("Connection is already closed.");
-                return;
-             }
-             connection.close();
+            if (results != null) {
+                results.close();
+            }
         } catch (SQLException e) {
-            LOGGER.error("Error closing the connection.", e);
+            LOGGER.warn("DB : Unable to close the result set.", e);
+        } finally {
+            statements.release(stmt);
+            pool.release(conn);
         }
+    }
 
+    /**
+     * Close all the DB connections in the pool.
+     */
+    public void close() {
+        if (pool == null) {
+            LOGGER.error("DB : Uninitialized DB Connection.");
+            return;
+        }
+        pool.close();
     }
 
     /**
-     * Check if the connection is initialized. Throw an {@link IllegalArgumentException} if not.
+     * Check if the connection pool is initialized. Throw an {@link IllegalArgumentException} if not.
      */
     private void connectionCheck() {
-        AppUtils.nullCheck(connection, "DB: Uninitialized DB Connection.");
+        AppUtils.nullCheck(pool, "DB: Uninitialized DB Connection.");
     }
 
     private static class DbCred {
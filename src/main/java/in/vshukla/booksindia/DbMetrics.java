@@ -0,0 +1,99 @@
+package in.vshukla.booksindia;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and timers of a {@link DbConnection}, exposed over JMX as {@value #JMX_TYPE}.
+ *
+ * Fetch latency is the time taken by every {@code ResultSet.next()} while streaming large results.
+ * Most calls are served from the rows already fetched. The maximum shows the round trips to the server.
+ */
+public class DbMetrics implements DbMetricsMBean {
+
+    public static final String JMX_TYPE = "DbConnection";
+
+    private final ConnectionPool pool;
+
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final TimerStat fetch = new TimerStat();
+
+    DbMetrics(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    void recordQuery() {
+        queries.increment();
+    }
+
+    /**
+     * @param nanos Time taken by {@code ResultSet.next()}.
+     * @param row   Did it return a row?
+     */
+    void recordFetch(long nanos, boolean row) {
+        fetch.record(nanos);
+        if (row) {
+            rows.increment();
+        }
+    }
+
+    @Override
+    public long getQueries() {
+        return queries.sum();
+    }
+
+    @Override
+    public long getRowsFetched() {
+        return rows.sum();
+    }
+
+    @Override
+    public double getFetchMeanMicros() {
+        return fetch.getMeanMicros();
+    }
+
+    @Override
+    public double getFetchMaxMicros() {
+        return fetch.getMaxMicros();
+    }
+
+    @Override
+    public long getFetchTimeMs() {
+        return fetch.getTotalNanos() / 1_000_000;
+    }
+
+    @Override
+    public int getPoolActive() {
+        return pool.getStats().active;
+    }
+
+    @Override
+    public int getPoolIdle() {
+        return pool.getStats().idle;
+    }
+
+    @Override
+    public double getPoolAvgWaitMs() {
+        return pool.getStats().getAvgWaitMs();
+    }
+
+    @Override
+    public long getPoolTimeouts() {
+        return pool.getStats().timeouts;
+    }
+
+    @Override
+    public long getStatementCacheHits() {
+        return pool.getStats().statementHits;
+    }
+
+    @Override
+    public long getStatementCacheMisses() {
+        return pool.getStats().statementMisses;
+    }
+
+    @Override
+    public double getStatementCacheHitRatio() {
+        return pool.getStats().getStatementHitRatio();
+    }
+}
@@ -0,0 +1,31 @@
+package in.vshukla.booksindia;
+
+/**
+ * JMX view of {@link DbMetrics}.
+ */
+public interface DbMetricsMBean {
+
+    long getQueries();
+
+    long getRowsFetched();
+
+    double getFetchMeanMicros();
+
+    double getFetchMaxMicros();
+
+    long getFetchTimeMs();
+
+    int getPoolActive();
+
+    int getPoolIdle();
+
+    double getPoolAvgWaitMs();
+
+    long getPoolTimeouts();
+
+    long getStatementCacheHits();
+
+    long getStatementCacheMisses();
+
+    double getStatementCacheHitRatio();
+}
@@ -0,0 +1,167 @@
+package in.vshukla.booksindia;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.DocumentStoredFieldVisitor;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.util.Bits;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Loads the documents of search hits, restricted to a projection of fields.
+ *
+ * Fields carrying doc values (see {@link IndexSchema.FieldSpec#hasDocValues()}) are read from the doc values.
+ * The rest are read from the stored fields, skipping the ones which are not asked for. Stored fields are compressed
+ * in blocks of documents, so a projection made only of doc value fields is much cheaper as it does not touch them.
+ * Segments written before a field got doc values fall back to its stored value.
+ * Hits are visited in the order of their doc ids to keep the reads sequential. So, the hits of a segment come together
+ * and its doc values are looked up once for all of them.
+ */
+public class DocumentLoader {
+
+    private final IndexSchema schema;
+
+    public DocumentLoader(IndexSchema schema) {
+        AppUtils.nullCheck(schema, "Lucene : Cannot load documents without a schema.");
+        this.schema = schema;
+    }
+
+    /**
+     * Load the documents of the given hits.
+     *
+     * @param searcher  Searcher the hits were collected on.
+     * @param hits      Hits to be loaded.
+     * @param fields    Fields to be loaded. Null or empty to load all the stored fields.
+     * @return Documents in the order of the hits.
+     * @throws IOException In case of low-level IO errors.
+     */
+    public List<Document> load(IndexSearcher searcher, ScoreDoc[] hits, Set<String> fields) throws IOException {
+        Integer[] byDocId = new Integer[hits.length];
+        for (int i = 0; i < hits.length; i++) {
+            byDocId[i] = i;
+        }
+        Arrays.sort(byDocId, Comparator.comparingInt(i -> hits[i].doc));
+
+        Set<String> storedFields = null;
+        List<IndexSchema.FieldSpec> docValueFields = new ArrayList<>();
+        if (fields != null && !fields.isEmpty()) {
+            storedFields = new HashSet<>();
+            for (String field : fields) {
+                // findSpec does not register the unknown names coming in with requests.
+                IndexSchema.FieldSpec spec = schema.findSpec(field);
+                if (spec != null && spec.hasDocValues()) {
+                    docValueFields.add(spec);
+                } else {
+                    storedFields.add(field);
+                }
+            }
+        }
+
+        List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+        Document[] docs = new Document[hits.length];
+        List<StoredField> values = new ArrayList<>(docValueFields.size());
+        LeafDocValues leafValues = null;
+        for (int i : byDocId) {
+            int docId = hits[i].doc;
+            if (storedFields == null) {
+                docs[i] = searcher.doc(docId);
+                continue;
+            }
+
+            Set<String> toLoad = storedFields;
+            values.clear();
+            if (!docValueFields.isEmpty()) {
+                if (leafValues == null || !leafValues.contains(docId)) {
+                    leafValues = new LeafDocValues(leaves.get(ReaderUtil.subIndex(docId, leaves)), docValueFields);
+                }
+                for (int f = 0; f < docValueFields.size(); f++) {
+                    StoredField value = leafValues.read(f, docId);
+                    if (value != null) {
+                        values.add(value);
+                    } else {
+                        if (toLoad == storedFields) {
+                            toLoad = new HashSet<>(storedFields);
+                        }
+                        toLoad.add(docValueFields.get(f).name);
+                    }
+                }
+            }
+
+            Document doc;
+            if (toLoad.isEmpty()) {
+                doc = new Document();
+            } else {
+                DocumentStoredFieldVisitor visitor = new DocumentStoredFieldVisitor(toLoad);
+                searcher.doc(docId, visitor);
+                doc = visitor.getDocument();
+            }
+            values.forEach(doc::add);
+            docs[i] = doc;
+        }
+        return Arrays.asList(docs);
+    }
+
+    /**
+     * Doc values of the projected fields in a single segment, looked up once for all the hits in it.
+     */
+    private static class LeafDocValues {
+        final int docBase;
+        final int maxDoc;
+        final List<IndexSchema.FieldSpec> specs;
+        final Bits[] docsWithField;
+        final NumericDocValues[] numericValues;
+        final BinaryDocValues[] binaryValues;
+
+        LeafDocValues(LeafReaderContext leaf, List<IndexSchema.FieldSpec> specs) throws IOException {
+            LeafReader reader = leaf.reader();
+            this.docBase = leaf.docBase;
+            this.maxDoc = reader.maxDoc();
+            this.specs = specs;
+            int fieldCount = specs.size();
+            docsWithField = new Bits[fieldCount];
+            numericValues = new NumericDocValues[fieldCount];
+            binaryValues = new BinaryDocValues[fieldCount];
+            for (int f = 0; f < fieldCount; f++) {
+                IndexSchema.FieldSpec spec = specs.get(f);
+                docsWithField[f] = reader.getDocsWithField(spec.name);
+                if (spec.kind == IndexSchema.FieldKind.INT) {
+                    numericValues[f] = reader.getNumericDocValues(spec.name);
+                } else {
+                    binaryValues[f] = reader.getBinaryDocValues(spec.name);
+                }
+            }
+        }
+
+        boolean contains(int docId) {
+            return docId >= docBase && docId < docBase + maxDoc;
+        }
+
+        /**
+         * @return Doc value of the given field as a stored field. Null in case the segment does not hold one.
+         */
+        StoredField read(int field, int docId) {
+            int leafDoc = docId - docBase;
+            if (docsWithField[field] == null || !docsWithField[field].get(leafDoc)) {
+                return null;
+            }
+            String name = specs.get(field).name;
+            if (numericValues[field] != null) {
+                return new StoredField(name, String.valueOf(numericValues[field].get(leafDoc)));
+            }
+            return binaryValues[field] == null ? null : new StoredField(name, binaryValues[field].get(leafDoc).utf8ToString());
+        }
+    }
+}
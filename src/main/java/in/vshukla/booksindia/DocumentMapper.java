@@ -0,0 +1,310 @@
+package in.vshukla.booksindia;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import in.vshukla.booksindia.exceptions.AppRuntimeException;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Turns objects of a single class into Lucene documents, without going through a map.
+ *
+ * The class is introspected once. Every public getter and public field becomes a property, read through a
+ * {@link MethodHandle}. A getter wins over a field of the same name. Properties are named as Jackson names them, so
+ * that getISBN is indexed as isbn, and {@link JsonProperty} and {@link JsonIgnore} are honoured on the getter, the
+ * public field or the field backing the property. {@link IndexField} takes precedence over them, and also sets the
+ * kind of the field. Values are turned into strings as Jackson does, and null values are left out.
+ *
+ * Only classes for which this gives the same document as Jackson are mapped, see {@link #unsupportedReason(Class)} :
+ * public classes whose properties are strings, primitives, their wrappers, big numbers or enums, without any other
+ * Jackson annotations. {@link Indexer#insert(Object)} converts the rest using Jackson.
+ *
+ * Every thread reuses its own fields, as {@link RowConverter} does. So, the returned document is only valid till the
+ * next call to {@link #toDocument(Object)} on the same thread. Get mappers from {@link DocumentMappers}.
+ *
+ * @param <T> Type of the objects.
+ */
+public class DocumentMapper<T> {
+
+    private static final MethodType ACCESSOR_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    // Jackson writes these as strings matching their toString(). Enums are written using their name.
+    private static final Set<Class<?>> SCALAR_TYPES = new HashSet<>(Arrays.asList(
+            String.class, Boolean.class, Character.class, Byte.class, Short.class, Integer.class, Long.class,
+            Float.class, Double.class, BigInteger.class, BigDecimal.class));
+
+    private final Class<T> type;
+
+    private final String[] names;
+
+    private final IndexSchema.FieldSpec[] specs;
+
+    // Every accessor takes the object and returns the value of the property as an Object.
+    private final MethodHandle[] accessors;
+
+    private final ThreadLocal<Field[][]> fields;
+
+    /**
+     * @param type      Class of the objects.
+     * @param schema    Schema the properties are looked up in. Properties typed using {@link IndexField} are added to it.
+     * @throws IllegalArgumentException In case the class cannot be mapped, or a property conflicts with the schema.
+     */
+    DocumentMapper(Class<T> type, IndexSchema schema) {
+        this.type = type;
+        String unsupported = unsupportedReason(type);
+        if (unsupported != null) {
+            throw new IllegalArgumentException("Index : Cannot map " + type.getName() + ". " + unsupported);
+        }
+        List<Property> properties = findProperties(type);
+        if (properties.isEmpty()) {
+            throw new IllegalArgumentException("Index : No public fields or getters to be indexed in " + type.getName());
+        }
+        int count = properties.size();
+        this.names = new String[count];
+        this.specs = new IndexSchema.FieldSpec[count];
+        this.accessors = new MethodHandle[count];
+        for (int i = 0; i < count; i++) {
+            Property property = properties.get(i);
+            IndexField annotation = property.member.getAnnotation(IndexField.class);
+            names[i] = property.name;
+            specs[i] = annotation == null || annotation.kind() == IndexField.Kind.SCHEMA
+                    ? schema.getSpec(property.name)
+                    : schema.getSpec(property.name, IndexSchema.FieldKind.valueOf(annotation.kind().name()));
+            accessors[i] = accessorOf(property.member);
+        }
+        this.fields = ThreadLocal.withInitial(() -> {
+            Field[][] created = new Field[this.specs.length][];
+            for (int i = 0; i < created.length; i++) {
+                created[i] = this.specs[i].createFields();
+            }
+            return created;
+        });
+    }
+
+    /**
+     * Check whether objects of the given class are mapped to the same document as Jackson would give.
+     *
+     * @param type  Class of the objects.
+     * @return Why the class cannot be mapped. Null in case it can.
+     */
+    static String unsupportedReason(Class<?> type) {
+        if (!Modifier.isPublic(type.getModifiers())) {
+            return "Class is not public.";
+        }
+        String annotated = findJacksonOnlyAnnotation(type);
+        if (annotated != null) {
+            return annotated;
+        }
+        for (Property property : findProperties(type)) {
+            Class<?> declaring = property.member instanceof Method
+                    ? ((Method) property.member).getDeclaringClass()
+                    : ((java.lang.reflect.Field) property.member).getDeclaringClass();
+            if (!Modifier.isPublic(declaring.getModifiers())) {
+                return "Property " + property.name + " is declared in " + declaring.getName() + ", which is not public.";
+            }
+            Class<?> valueType = property.member instanceof Method
+                    ? ((Method) property.member).getReturnType()
+                    : ((java.lang.reflect.Field) property.member).getType();
+            if (!valueType.isPrimitive() && !valueType.isEnum() && !SCALAR_TYPES.contains(valueType)) {
+                return "Property " + property.name + " of type " + valueType.getName() + " is not converted as Jackson does.";
+            }
+            if (valueType.isEnum() && (annotated = findJacksonOnlyAnnotation(valueType)) != null) {
+                return annotated;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Description of a Jackson annotation other than {@link JsonProperty} and {@link JsonIgnore} on the class,
+     * its members or those of its super classes. Null in case there is none.
+     */
+    private static String findJacksonOnlyAnnotation(Class<?> type) {
+        for (Class<?> c = type; c != null && c != Object.class && c != Enum.class; c = c.getSuperclass()) {
+            List<AnnotatedElement> elements = new ArrayList<>();
+            elements.add(c);
+            elements.addAll(Arrays.asList(c.getDeclaredFields()));
+            elements.addAll(Arrays.asList(c.getDeclaredMethods()));
+            for (AnnotatedElement element : elements) {
+                for (Annotation annotation : element.getAnnotations()) {
+                    Class<? extends Annotation> annotationType = annotation.annotationType();
+                    if (annotationType.getName().startsWith("com.fasterxml.jackson.")
+                            && annotationType != JsonProperty.class && annotationType != JsonIgnore.class) {
+                        return "@" + annotationType.getSimpleName() + " on " + element + " is only handled by Jackson.";
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Properties of the class to be indexed, named as they are indexed.
+     * @throws IllegalArgumentException In case two properties are indexed under the same name.
+     */
+    private static List<Property> findProperties(Class<?> type) {
+        List<Property> properties = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (Map.Entry<String, AccessibleObject> entry : findMembers(type).entrySet()) {
+            AccessibleObject member = entry.getValue();
+            IndexField annotation = member.getAnnotation(IndexField.class);
+            JsonIgnore jsonIgnore = jsonAnnotation(type, entry.getKey(), member, JsonIgnore.class);
+            if (annotation != null ? annotation.ignore() : jsonIgnore != null && jsonIgnore.value()) {
+                continue;
+            }
+            JsonProperty jsonProperty = jsonAnnotation(type, entry.getKey(), member, JsonProperty.class);
+            String name = entry.getKey();
+            if (annotation != null && !annotation.name().isEmpty()) {
+                name = annotation.name();
+            } else if (jsonProperty != null && !jsonProperty.value().isEmpty()) {
+                name = jsonProperty.value();
+            }
+            if (!names.add(name)) {
+                throw new IllegalArgumentException("Index : Field " + name + " is mapped twice in " + type.getName());
+            }
+            properties.add(new Property(name, member));
+        }
+        return properties;
+    }
+
+    /**
+     * @return Getters and fields of the class by property name, getters taking precedence. Getters are named as
+     * Jackson names them by default, fields by their own names.
+     */
+    private static Map<String, AccessibleObject> findMembers(Class<?> type) {
+        Map<String, AccessibleObject> members = new LinkedHashMap<>();
+        for (java.lang.reflect.Field field : type.getFields()) {
+            int modifiers = field.getModifiers();
+            if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+                members.put(field.getName(), field);
+            }
+        }
+        try {
+            for (PropertyDescriptor property : Introspector.getBeanInfo(type, Object.class).getPropertyDescriptors()) {
+                Method getter = property.getReadMethod();
+                if (getter != null) {
+                    members.put(jacksonName(getter), getter);
+                }
+            }
+        } catch (IntrospectionException e) {
+            throw new IllegalArgumentException("Index : Unable to introspect " + type.getName(), e);
+        }
+        return members;
+    }
+
+    /**
+     * Name of the property of the given getter, as Jackson has it. Unlike {@link Introspector#decapitalize(String)},
+     * Jackson lowercases all the leading capitals. So, getISBN is isbn and getURLName is urlname.
+     */
+    static String jacksonName(Method getter) {
+        String method = getter.getName();
+        char[] name = method.substring(method.startsWith("is") ? 2 : 3).toCharArray();
+        for (int i = 0; i < name.length && Character.isUpperCase(name[i]); i++) {
+            name[i] = Character.toLowerCase(name[i]);
+        }
+        return new String(name);
+    }
+
+    /**
+     * Jackson annotation of a property. As in Jackson, it may be on the getter or on the field backing the property,
+     * public or not.
+     */
+    private static <A extends Annotation> A jsonAnnotation(Class<?> type, String property, AccessibleObject member, Class<A> annotationType) {
+        A annotation = member.getAnnotation(annotationType);
+        for (Class<?> c = type; annotation == null && c != null && c != Object.class; c = c.getSuperclass()) {
+            try {
+                annotation = c.getDeclaredField(property).getAnnotation(annotationType);
+            } catch (NoSuchFieldException e) {
+                // Not declared in this class.
+            }
+        }
+        return annotation;
+    }
+
+    private MethodHandle accessorOf(AccessibleObject member) {
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        try {
+            MethodHandle handle = member instanceof Method
+                    ? lookup.unreflect((Method) member)
+                    : lookup.unreflectGetter((java.lang.reflect.Field) member);
+            return handle.asType(ACCESSOR_TYPE);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Index : Unable to access " + member + " of " + type.getName(), e);
+        }
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * @return Names of the fields the properties are indexed under.
+     */
+    public String[] getFieldNames() {
+        return names.clone();
+    }
+
+    /**
+     * Fill the given object into a document using the fields owned by this thread.
+     *
+     * @param object    Object to be converted. Should be an instance of the mapped class.
+     * @return Document holding the non null properties of the object. Fields are reused by the next call on this thread.
+     */
+    public Document toDocument(T object) {
+        AppUtils.nullCheck(object, "Index : Cannot map a null object.");
+        Field[][] current = fields.get();
+        Document document = new Document();
+        for (int i = 0; i < accessors.length; i++) {
+            Object value = get(i, object);
+            if (value == null) {
+                continue;
+            }
+            specs[i].setValue(current[i], value instanceof Enum ? ((Enum<?>) value).name() : value.toString());
+            for (Field field : current[i]) {
+                document.add(field);
+            }
+        }
+        return document;
+    }
+
+    private static class Property {
+        final String name;
+        final AccessibleObject member;
+
+        Property(String name, AccessibleObject member) {
+            this.name = name;
+            this.member = member;
+        }
+    }
+
+    private Object get(int property, T object) {
+        try {
+            return (Object) accessors[property].invokeExact((Object) object);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new AppRuntimeException("Index : Unable to read " + names[property] + " of " + type.getName(), e);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package in.vshukla.booksindia;
+
+import org.apache.lucene.document.Document;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * {@link DocumentMapper}s by class, built the first time a class is seen and shared by all the threads after that.
+ */
+public class DocumentMappers {
+
+    private final IndexSchema schema;
+
+    private final ConcurrentMap<Class<?>, DocumentMapper<?>> mappers = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Class<?>, Boolean> supported = new ConcurrentHashMap<>();
+
+    /**
+     * @param schema Schema the properties of the classes are indexed as per.
+     */
+    public DocumentMappers(IndexSchema schema) {
+        AppUtils.nullCheck(schema, "Index : Cannot map objects without a schema.");
+        this.schema = schema;
+    }
+
+    /**
+     * @param type  Class of the objects.
+     * @param <T>   Type of the objects.
+     * @return Mapper of the class.
+     * @throws IllegalArgumentException In case the class cannot be mapped.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> DocumentMapper<T> forClass(Class<T> type) {
+        return (DocumentMapper<T>) mappers.computeIfAbsent(type, t -> new DocumentMapper<>(t, schema));
+    }
+
+    /**
+     * @param type  Class of the objects.
+     * @return Can the objects be mapped to the same documents as Jackson would give?
+     * @see DocumentMapper#unsupportedReason(Class)
+     */
+    public boolean isSupported(Class<?> type) {
+        return supported.computeIfAbsent(type, t -> DocumentMapper.unsupportedReason(t) == null);
+    }
+
+    /**
+     * @see DocumentMapper#toDocument(Object)
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Document toDocument(T object) {
+        AppUtils.nullCheck(object, "Index : Cannot map a null object.");
+        return forClass((Class<T>) object.getClass()).toDocument(object);
+    }
+}
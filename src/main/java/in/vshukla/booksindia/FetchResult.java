@@ -1,14 +1,28 @@
 package in.vshukla.booksindia;
 
+import in.vshukla.booksindia.exceptions.AppRuntimeException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Created by venkatesh on 28/4/17.
@@ -17,15 +31,40 @@ public class FetchResult {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(FetchResult.class);
 
-    private FetchResult () {
+    private final RowConverter rowConverter;
+
+    private FetchResult (IndexSchema schema) {
+        this.rowConverter = new RowConverter(schema);
     }
 
+    /**
+     * Resumes an interrupted build from its last checkpoint, instead of starting over.
+     * Needs {@value AppConstants#PROP_CHECKPOINT_ROWS} or {@value AppConstants#PROP_CHECKPOINT_SEC} set for the
+     * interrupted build. Otherwise it starts over as well.
+     */
+    private static final String ARG_RESUME = "--resume";
+
+    /**
+     * Rebuilds from a snapshot written by {@link SnapshotWriter}, for example --snapshot=/data/book.snap, instead of
+     * reading the DB.
+     */
+    private static final String ARG_SNAPSHOT = "--snapshot=";
+
     public static void main(String[] args) {
-        FetchResult fetchResult = new FetchResult();
-        DbConnection dbConnection = DbConnection.getInstance();
+        Path snapshot = Arrays.stream(args).filter(arg -> arg.startsWith(ARG_SNAPSHOT))
+                .map(arg -> Paths.get(arg.substring(ARG_SNAPSHOT.length()))).findFirst().orElse(null);
         try (Indexer indexer = new Indexer()) {
-            indexer.initialize();
-            dbConnection.processLargeResultSet("SELECT * FROM BOOK", (rs) -> fetchResult.indexDataSafe(indexer, rs));
+            if (Arrays.asList(args).contains(ARG_RESUME)) {
+                indexer.initialize(AppUtils.getProperty(AppConstants.PROP_IDX_LOC, () -> AppConstants.DEFAULT_IDX_LOC), true);
+                LOGGER.info("Resuming the build after id {}", indexer.getLastIndexedId());
+            } else {
+                indexer.initialize();
+            }
+            if (snapshot != null) {
+                ingest(snapshot, indexer);
+            } else {
+                ingest(DbConnection.getInstance(), indexer);
+            }
         } catch (SQLException e) {
             LOGGER.error("Caught SQL Exception", e);
         } catch (IOException e) {
@@ -33,6 +72,201 @@ public class FetchResult {
         }
     }
 
+    /**
+     * Index the rows of the book table using the given initialized indexer.
+     * The indexer is not closed here. It is marked complete once all the rows are indexed, see {@link Indexer#markComplete()}.
+     * Rows are indexed through an {@link IngestPipeline} of {@value AppConstants#PROP_INGEST_WORKERS} workers,
+     * or on the fetching thread itself in case it is set to 0.
+     * Progress is logged every {@value AppConstants#PROP_PROGRESS_INTERVAL_SEC} seconds.
+     *
+     * By default nothing is committed till the indexer is closed, and the rows are read in parallel using
+     * {@link PartitionedIngest}. In case {@value AppConstants#PROP_CHECKPOINT_ROWS} or
+     * {@value AppConstants#PROP_CHECKPOINT_SEC} is set, the index is committed every so many rows or seconds,
+     * whichever comes first, recording the id the rows have been indexed up to. An incremental build picks up from
+     * there. To do so, the rows are read in the order of their ids on a single connection using {@link KeysetIngest}.
+     *
+     * @param dbConnection  Source of the rows.
+     * @param indexer       Initialized indexer.
+     * @throws SQLException In case of errors while fetching the rows.
+     */
+    static void ingest(DbConnection dbConnection, Indexer indexer) throws SQLException {
+        ingest(dbConnection, indexer, () -> false);
+    }
+
+    /**
+     * Index the rows of the book table, till done or till a stop is requested.
+     * A stopped ingest throws a {@link CancellationException} and leaves the indexer incomplete, so that the high-water
+     * mark stays at the last checkpoint. Stopping does not interrupt any thread, as that would close the index files.
+     *
+     * @param stopRequested Checked before every row.
+     * @see #ingest(DbConnection, Indexer)
+     */
+    static void ingest(DbConnection dbConnection, Indexer indexer, BooleanSupplier stopRequested) throws SQLException {
+        FetchResult fetchResult = new FetchResult(indexer.getSchema());
+        int interval = AppUtils.getIntProperty(AppConstants.PROP_PROGRESS_INTERVAL_SEC, AppConstants.DEFAULT_PROGRESS_INTERVAL_SEC);
+        IngestProgress progress = new IngestProgress(indexer.getMetrics(), dbConnection.getMetrics(),
+                estimateRows(dbConnection, indexer), Math.max(1, interval));
+        try {
+            ingest(dbConnection, indexer, fetchResult, stopRequested);
+        } finally {
+            progress.close();
+        }
+    }
+
+    /**
+     * Index the rows of a snapshot using the given initialized indexer, without touching the DB.
+     * The indexer is not closed here, but is marked complete on success. {@value AppConstants#PROP_INGEST_WORKERS} threads read ranges of the snapshot
+     * and index them, at least one. In incremental mode only the rows after the last indexed id are indexed.
+     * No checkpoints are taken, as a rebuild from the snapshot is cheap to run again.
+     *
+     * @param file      Snapshot written by {@link SnapshotWriter}.
+     * @param indexer   Initialized indexer.
+     * @return Number of rows indexed.
+     * @throws IOException In case of errors while reading the snapshot or indexing.
+     */
+    static long ingest(Path file, Indexer indexer) throws IOException {
+        FetchResult fetchResult = new FetchResult(indexer.getSchema());
+        int workers = Math.max(1, AppUtils.getIntProperty(AppConstants.PROP_INGEST_WORKERS, AppConstants.DEFAULT_INGEST_WORKERS));
+        int interval = AppUtils.getIntProperty(AppConstants.PROP_PROGRESS_INTERVAL_SEC, AppConstants.DEFAULT_PROGRESS_INTERVAL_SEC);
+        OptionalLong afterId = indexer.isIncremental() ? indexer.getLastIndexedId() : OptionalLong.empty();
+        LongAdder rowCount = new LongAdder();
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        IngestProgress progress = null;
+        try (BookSnapshot snapshot = BookSnapshot.open(file)) {
+            progress = new IngestProgress(indexer.getMetrics(), null, snapshot.getRowCount(), Math.max(1, interval));
+            Stream<Row> rows = snapshot.stream().parallel();
+            if (afterId.isPresent()) {
+                LOGGER.info("Indexing books with id greater than {}", afterId.getAsLong());
+                rows = rows.filter(row -> isAfter(row, afterId.getAsLong()));
+            }
+            Stream<Row> selected = rows;
+            pool.submit(() -> selected.forEach(row -> {
+                try {
+                    indexer.insert(fetchResult.rowConverter.convert(row));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                rowCount.increment();
+            })).get();
+            indexer.markComplete();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AppRuntimeException("Interrupted while indexing the snapshot.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new AppRuntimeException("Indexing the snapshot failed.", e.getCause());
+        } finally {
+            // Not interrupting the workers, as that closes the files of the index they are writing to.
+            pool.shutdown();
+            awaitQuietly(pool);
+            if (progress != null) {
+                progress.close();
+            }
+        }
+        long rows = rowCount.sum();
+        long elapsedMs = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        LOGGER.info("Indexed {} rows from the snapshot {} in {} ms ({} rows/sec).", rows, file, elapsedMs, rows * 1000 / elapsedMs);
+        return rows;
+    }
+
+    private static void awaitQuietly(ForkJoinPool pool) {
+        try {
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean isAfter(Row row, long afterId) {
+        String id = row.getValue(AppConstants.FIELD_ID);
+        return id != null && Long.parseLong(id) > afterId;
+    }
+
+    private static void ingest(DbConnection dbConnection, Indexer indexer, FetchResult fetchResult, BooleanSupplier stopRequested)
+            throws SQLException {
+        int workers = AppUtils.getIntProperty(AppConstants.PROP_INGEST_WORKERS, AppConstants.DEFAULT_INGEST_WORKERS);
+        if (workers <= 0) {
+            InlineIndexing inline = new InlineIndexing(indexer, fetchResult.rowConverter);
+            try {
+                fetch(dbConnection, indexer, inline, inline::drain, stopRequested);
+                inline.finish();
+            } catch (IOException e) {
+                LOGGER.error("IO Error while indexing.", e);
+            }
+            return;
+        }
+        int queueDepth = AppUtils.getIntProperty(AppConstants.PROP_INGEST_QUEUE_DEPTH, AppConstants.DEFAULT_INGEST_QUEUE_DEPTH);
+        try {
+            // Closing the pipeline waits for the rows in flight, and fails in case any of them failed.
+            try (IngestPipeline pipeline = new IngestPipeline(indexer, fetchResult.rowConverter, queueDepth, workers).start()) {
+                fetch(dbConnection, indexer, pipeline.reader(), pipeline::drain, stopRequested);
+            }
+            indexer.markComplete();
+        } catch (IOException e) {
+            LOGGER.error("IO Error while indexing.", e);
+        }
+    }
+
+    /**
+     * @return Expected number of rows to be fetched. The planner's estimate for a full build, as counting a large
+     * table takes a while. Zero in case it is not known.
+     */
+    private static long estimateRows(DbConnection dbConnection, Indexer indexer) {
+        OptionalLong afterId = indexer.isIncremental() ? indexer.getLastIndexedId() : OptionalLong.empty();
+        String sql = afterId.isPresent()
+                ? "SELECT count(*) FROM BOOK WHERE id > ?"
+                : "SELECT reltuples::bigint FROM pg_class WHERE relname = 'book'";
+        List<Long> params = afterId.isPresent() ? Collections.singletonList(afterId.getAsLong()) : Collections.emptyList();
+        long[] rows = new long[1];
+        try {
+            dbConnection.processResult(sql, params, rs -> {
+                try {
+                    rows[0] = rs.getLong(1);
+                } catch (SQLException e) {
+                    LOGGER.warn("Unable to read the row estimate.", e);
+                }
+            });
+        } catch (SQLException e) {
+            LOGGER.warn("Unable to estimate the rows to be fetched. Progress is reported without an ETA.", e);
+        }
+        return Math.max(0, rows[0]);
+    }
+
+    /**
+     * @param drain Waits for the rows handed to the consumer so far to be indexed.
+     */
+    private static void fetch(DbConnection dbConnection, Indexer indexer, Consumer<ResultSet> consumer, Runnable drain,
+                              BooleanSupplier stopRequested) throws SQLException, IOException {
+        Consumer<ResultSet> rowConsumer = rs -> {
+            if (stopRequested.getAsBoolean()) {
+                throw new CancellationException("Ingest : Stopped on request.");
+            }
+            consumer.accept(rs);
+        };
+        // In incremental mode only the rows added after the last indexed id are fetched.
+        OptionalLong afterId = indexer.isIncremental() ? indexer.getLastIndexedId() : OptionalLong.empty();
+        int checkpointRows = AppUtils.getIntProperty(AppConstants.PROP_CHECKPOINT_ROWS, AppConstants.DEFAULT_CHECKPOINT_ROWS);
+        int checkpointSec = AppUtils.getIntProperty(AppConstants.PROP_CHECKPOINT_SEC, AppConstants.DEFAULT_CHECKPOINT_SEC);
+        int partitions = AppUtils.getIntProperty(AppConstants.PROP_INGEST_PARTITIONS, AppConstants.DEFAULT_INGEST_PARTITIONS);
+        if (checkpointRows > 0 || checkpointSec > 0) {
+            int pageSize = AppUtils.getIntProperty(AppConstants.PROP_KEYSET_PAGE_SIZE, AppConstants.DEFAULT_KEYSET_PAGE_SIZE);
+            new KeysetIngest(dbConnection, pageSize, checkpointRows, checkpointSec).run(rowConsumer, afterId, lastId -> {
+                drain.run();
+                indexer.checkpoint(lastId);
+            });
+        } else if (partitions > 1) {
+            new PartitionedIngest(dbConnection, partitions).run(rowConsumer, afterId);
+        } else if (afterId.isPresent()) {
+            LOGGER.info("Fetching books with id greater than {}", afterId.getAsLong());
+            dbConnection.processLargeResultSet("SELECT * FROM BOOK WHERE id > ?", Collections.singletonList(afterId.getAsLong()), rowConsumer);
+        } else {
+            dbConnection.processLargeResultSet("SELECT * FROM BOOK", rowConsumer);
+        }
+    }
+
     private void printDataSafe (ResultSet resultSet) {
         try {
             printData(resultSet);
@@ -51,23 +285,64 @@ public class FetchResult {
             System.out.println(" };");
     }
 
-    private void indexDataSafe(Indexer indexer, final ResultSet resultSet) {
-        try {
-            indexData(indexer, resultSet);
-        } catch (SQLException e) {
-            LOGGER.error("SQL Execution failed.", e);
-        } catch (IOException e) {
-            LOGGER.error("IO Error while indexing.", e);
+    /**
+     * Indexes rows on the fetching thread itself. A row failing to index is logged and skipped, but it keeps the
+     * indexer from being marked complete and fails the next checkpoint. So, the high-water mark never moves past it
+     * and the next incremental build reads it again.
+     */
+    static class InlineIndexing implements Consumer<ResultSet> {
+
+        private final Indexer indexer;
+
+        private final RowConverter rowConverter;
+
+        private final LongAdder failures = new LongAdder();
+
+        InlineIndexing(Indexer indexer, RowConverter rowConverter) {
+            this.indexer = indexer;
+            this.rowConverter = rowConverter;
+        }
+
+        @Override
+        public void accept(ResultSet resultSet) {
+            try {
+                indexer.insert(rowConverter.convert(resultSet));
+            } catch (SQLException e) {
+                failures.increment();
+                LOGGER.error("SQL Execution failed.", e);
+            } catch (IOException e) {
+                failures.increment();
+                LOGGER.error("IO Error while indexing.", e);
+            }
+        }
+
+        long getFailures() {
+            return failures.sum();
         }
-    }
 
-    private void indexData(Indexer indexer, final ResultSet resultSet) throws SQLException, IOException {
-        ResultSetMetaData metaData =  resultSet.getMetaData();
-        Map<String, String> data = new HashMap<>(metaData.getColumnCount());
-        for (int i = 1; i <= metaData.getColumnCount(); i++) {
-            data.put(metaData.getColumnName(i), AppUtils.cleanValue(resultSet.getString(i)));
+        /**
+         * Called before a checkpoint. Rows are indexed as they are handed over, so there is nothing to wait for.
+         *
+         * @throws AppRuntimeException In case any of the rows failed, as the checkpoint would skip it.
+         */
+        void drain() {
+            long failed = failures.sum();
+            if (failed > 0) {
+                throw new AppRuntimeException("Ingest : " + failed + " rows failed to index. Not checkpointing past them.");
+            }
+        }
+
+        /**
+         * Called once all the rows are handed over. Marks the indexer complete in case none of them failed.
+         */
+        void finish() {
+            long failed = failures.sum();
+            if (failed == 0) {
+                indexer.markComplete();
+            } else {
+                LOGGER.error("Ingest : {} rows failed to index. Leaving the build incomplete.", failed);
+            }
         }
-        indexer.insert(data);
     }
 
 }
@@ -0,0 +1,38 @@
+package in.vshukla.booksindia;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * How a property of an object given to {@link Indexer#insert(Object)} is indexed. Goes on a public field or getter.
+ * Properties without it are indexed under their own name, as the {@link IndexSchema} has it.
+ *
+ * @see DocumentMapper
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD})
+public @interface IndexField {
+
+    /**
+     * Kind of a field. {@link #SCHEMA} leaves it to the {@link IndexSchema}.
+     */
+    enum Kind {
+        SCHEMA, TEXT, STRING, INT
+    }
+
+    /**
+     * @return Name of the field. The name of the property in case it is empty.
+     */
+    String name() default "";
+
+    Kind kind() default Kind.SCHEMA;
+
+    /**
+     * @return Should the property be left out of the index?
+     */
+    boolean ignore() default false;
+}
@@ -0,0 +1,84 @@
+package in.vshukla.booksindia;
+
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.TieredMergePolicy;
+
+/**
+ * Tuning of the {@link org.apache.lucene.index.IndexWriter}, chosen using {@value AppConstants#PROP_IDX_PROFILE}.
+ *
+ * BULK_LOAD : For full rebuilds. Buffers a lot more documents before flushing, lets many more segments pile up before
+ * merging them, writes non-compound segments and merges on every core without throttling. The index is force merged
+ * into a few segments once a full build completes, so that it is quick to search.
+ *
+ * SERVING : For an index being updated while it is searched. Lucene's defaults, keeping the number of segments and
+ * open files low at all times.
+ *
+ * The RAM buffer and the final segment count can be overridden using {@value AppConstants#PROP_IDX_RAM_BUFFER_MB} and
+ * {@value AppConstants#PROP_IDX_FORCE_MERGE_SEGMENTS}.
+ */
+public enum IndexProfile {
+
+    BULK_LOAD(512, 30, false, 1),
+    SERVING(IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB, 10, true, 0);
+
+    private final double ramBufferMb;
+    private final double segmentsPerTier;
+    private final boolean compoundFiles;
+    private final int forceMergeSegments;
+
+    IndexProfile(double ramBufferMb, double segmentsPerTier, boolean compoundFiles, int forceMergeSegments) {
+        this.ramBufferMb = ramBufferMb;
+        this.segmentsPerTier = segmentsPerTier;
+        this.compoundFiles = compoundFiles;
+        this.forceMergeSegments = forceMergeSegments;
+    }
+
+    /**
+     * @return Profile named by {@value AppConstants#PROP_IDX_PROFILE}.
+     */
+    public static IndexProfile fromProperty() {
+        String name = AppUtils.getProperty(AppConstants.PROP_IDX_PROFILE, () -> AppConstants.DEFAULT_IDX_PROFILE);
+        for (IndexProfile profile : values()) {
+            if (profile.name().replace("_", "").equalsIgnoreCase(name.replace("_", "").replace("-", "").trim())) {
+                return profile;
+            }
+        }
+        throw new IllegalArgumentException("Index : Unknown profile " + name);
+    }
+
+    /**
+     * Apply this profile to the config of a writer.
+     *
+     * @param config        Config of the writer.
+     * @param scheduler     Merge scheduler set on the config.
+     * @param shardCount    Number of writers sharing the RAM buffer.
+     */
+    void configure(IndexWriterConfig config, ConcurrentMergeScheduler scheduler, int shardCount) {
+        double ramBuffer = AppUtils.getIntProperty(AppConstants.PROP_IDX_RAM_BUFFER_MB, (int) ramBufferMb);
+        config.setRAMBufferSizeMB(Math.max(1, ramBuffer / shardCount));
+        config.setUseCompoundFile(compoundFiles);
+
+        TieredMergePolicy mergePolicy = new TieredMergePolicy();
+        mergePolicy.setSegmentsPerTier(segmentsPerTier);
+        mergePolicy.setMaxMergeAtOnce((int) segmentsPerTier);
+        if (!compoundFiles) {
+            mergePolicy.setNoCFSRatio(0);
+        }
+        config.setMergePolicy(mergePolicy);
+
+        if (this == BULK_LOAD) {
+            int cores = Runtime.getRuntime().availableProcessors();
+            int threads = Math.max(1, cores / shardCount);
+            scheduler.setMaxMergesAndThreads(threads + 5, threads);
+            scheduler.disableAutoIOThrottle();
+        }
+    }
+
+    /**
+     * @return Number of segments the index is merged into once a full build completes. 0 for no merging.
+     */
+    public int getForceMergeSegments() {
+        return AppUtils.getIntProperty(AppConstants.PROP_IDX_FORCE_MERGE_SEGMENTS, forceMergeSegments);
+    }
+}
@@ -0,0 +1,229 @@
+package in.vshukla.booksindia;
+
+import org.apache.lucene.document.BinaryDocValuesField;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.util.BytesRef;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Describes how every column of the book table is turned into Lucene fields.
+ *
+ * title, review : Analysed {@link TextField}. Matches individual words.
+ * isbn, gr_id   : Untokenised {@link StringField}. Matches the exact value.
+ * id            : {@link StringField} for exact lookups and updates, {@link IntPoint} for range queries
+ *                 and {@link NumericDocValuesField} for sorting.
+ *
+ * Columns not known to the schema are indexed as stored {@link StringField}s.
+ * Storage can be switched off per field using {@value AppConstants#PROP_IDX_UNSTORED}.
+ * Fields listed in {@value AppConstants#PROP_IDX_DOCVALUES} additionally carry a {@link BinaryDocValuesField},
+ * so that search results can be loaded without decompressing the stored fields.
+ */
+public class IndexSchema {
+
+    public enum FieldKind {
+        TEXT, STRING, INT
+    }
+
+    private static final Map<String, FieldKind> BOOK_FIELDS;
+
+    static {
+        Map<String, FieldKind> fields = new HashMap<>();
+        fields.put(AppConstants.FIELD_ID, FieldKind.INT);
+        fields.put("isbn", FieldKind.STRING);
+        fields.put("gr_id", FieldKind.STRING);
+        fields.put(AppConstants.FIELD_TITLE, FieldKind.TEXT);
+        fields.put("review", FieldKind.TEXT);
+        BOOK_FIELDS = Collections.unmodifiableMap(fields);
+    }
+
+    private final Map<String, FieldSpec> specs = new ConcurrentHashMap<>();
+
+    private final Set<String> unstored;
+
+    private final Set<String> docValues;
+
+    /**
+     * @param kinds     Kind of every known field.
+     * @param unstored  Names of the fields which should not be stored.
+     */
+    public IndexSchema(Map<String, FieldKind> kinds, Set<String> unstored) {
+        this(kinds, unstored, Collections.emptySet());
+    }
+
+    /**
+     * @param kinds     Kind of every known field.
+     * @param unstored  Names of the fields which should not be stored.
+     * @param docValues Names of the fields which should carry binary doc values. Integer fields always carry doc values.
+     */
+    public IndexSchema(Map<String, FieldKind> kinds, Set<String> unstored, Set<String> docValues) {
+        this.unstored = Collections.unmodifiableSet(new HashSet<>(unstored));
+        this.docValues = Collections.unmodifiableSet(new HashSet<>(docValues));
+        kinds.forEach((name, kind) -> specs.put(name, newSpec(name, kind)));
+    }
+
+    private FieldSpec newSpec(String name, FieldKind kind) {
+        return new FieldSpec(name, kind, !unstored.contains(name), kind == FieldKind.INT || docValues.contains(name));
+    }
+
+    /**
+     * Get the schema of the book table.
+     * Fields listed (comma separated) in {@value AppConstants#PROP_IDX_UNSTORED} are indexed but not stored.
+     * Fields listed in {@value AppConstants#PROP_IDX_DOCVALUES} carry binary doc values.
+     *
+     * @return Schema of the book index.
+     */
+    public static IndexSchema forBooks() {
+        Set<String> unstored = getFieldsProperty(AppConstants.PROP_IDX_UNSTORED, AppConstants.DEFAULT_IDX_UNSTORED);
+        Set<String> docValues = getFieldsProperty(AppConstants.PROP_IDX_DOCVALUES, AppConstants.DEFAULT_IDX_DOCVALUES);
+        return new IndexSchema(BOOK_FIELDS, unstored, docValues);
+    }
+
+    private static Set<String> getFieldsProperty(String propName, String defaultVal) {
+        return Arrays.stream(AppUtils.getProperty(propName, () -> defaultVal).split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Get the spec of the given field. Unknown fields get a stored {@link FieldKind#STRING} spec.
+     *
+     * @param name  Name of the field.
+     * @return Spec of the field.
+     */
+    public FieldSpec getSpec(String name) {
+        return specs.computeIfAbsent(name, n -> newSpec(n, FieldKind.STRING));
+    }
+
+    /**
+     * Get the spec of the given field, registering it with the given kind in case it is unknown.
+     *
+     * @param name  Name of the field.
+     * @param kind  Kind the field is expected to be of.
+     * @return Spec of the field.
+     * @throws IllegalArgumentException In case the field is already known to be of another kind.
+     */
+    public FieldSpec getSpec(String name, FieldKind kind) {
+        FieldSpec spec = specs.computeIfAbsent(name, n -> newSpec(n, kind));
+        if (spec.kind != kind) {
+            throw new IllegalArgumentException("Index : Field " + name + " is of kind " + spec.kind + ". Cannot index it as " + kind);
+        }
+        return spec;
+    }
+
+    /**
+     * Look up the spec of the given field without registering unknown fields.
+     *
+     * @param name  Name of the field.
+     * @return Spec of the field. Null in case of unknown fields.
+     */
+    public FieldSpec findSpec(String name) {
+        return specs.get(name);
+    }
+
+    /**
+     * @param name  Name of the field.
+     * @return Kind of the field. {@link FieldKind#STRING} in case of unknown fields.
+     */
+    public FieldKind getKind(String name) {
+        FieldSpec spec = specs.get(name);
+        return spec == null ? FieldKind.STRING : spec.kind;
+    }
+
+    /**
+     * Add the fields corresponding to the given column value to the document.
+     *
+     * @param document  Document to be populated.
+     * @param name      Name of the column.
+     * @param value     Value of the column.
+     */
+    public void addFields(Document document, String name, String value) {
+        FieldSpec spec = getSpec(name);
+        Field[] fields = spec.createFields();
+        spec.setValue(fields, value);
+        for (Field field : fields) {
+            document.add(field);
+        }
+    }
+
+    /**
+     * How a single column is mapped to Lucene fields.
+     */
+    public static class FieldSpec {
+        public final String name;
+        public final FieldKind kind;
+        public final boolean stored;
+        private final boolean docValues;
+
+        FieldSpec(String name, FieldKind kind, boolean stored, boolean docValues) {
+            this.name = name;
+            this.kind = kind;
+            this.stored = stored;
+            this.docValues = docValues;
+        }
+
+        /**
+         * @return Does this field carry a doc value? Numeric for {@link FieldKind#INT} fields, binary otherwise.
+         */
+        public boolean hasDocValues() {
+            return docValues;
+        }
+
+        /**
+         * Create the fields backing this column. Values are to be filled in using {@link #setValue(Field[], String)}.
+         *
+         * @return Fresh field instances.
+         */
+        public Field[] createFields() {
+            Field.Store store = stored ? Field.Store.YES : Field.Store.NO;
+            switch (kind) {
+                case TEXT:
+                    return docValues
+                            ? new Field[] { new TextField(name, "", store), new BinaryDocValuesField(name, new BytesRef()) }
+                            : new Field[] { new TextField(name, "", store) };
+                case INT:
+                    return new Field[] { new StringField(name, "", store), new IntPoint(name, 0), new NumericDocValuesField(name, 0) };
+                case STRING:
+                default:
+                    return docValues
+                            ? new Field[] { new StringField(name, "", store), new BinaryDocValuesField(name, new BytesRef()) }
+                            : new Field[] { new StringField(name, "", store) };
+            }
+        }
+
+        /**
+         * Set the given value on fields created by {@link #createFields()}.
+         *
+         * @param fields    Fields backing this column.
+         * @param value     Value of the column.
+         */
+        public void setValue(Field[] fields, String value) {
+            fields[0].setStringValue(value);
+            if (kind == FieldKind.INT) {
+                int intValue;
+                try {
+                    intValue = Integer.parseInt(value);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Index : Field " + name + " expects an integer. Found " + value, e);
+                }
+                fields[1].setIntValue(intValue);
+                fields[2].setLongValue(intValue);
+            } else if (docValues) {
+                fields[1].setBytesValue(new BytesRef(value == null ? "" : value));
+            }
+        }
+    }
+}
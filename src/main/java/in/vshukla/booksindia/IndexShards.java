@@ -0,0 +1,147 @@
+package in.vshukla.booksindia;
+
+import in.vshukla.booksindia.exceptions.AppRuntimeException;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.StringHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Layout of a sharded index on the disk, and routing of documents to the shards.
+ *
+ * An index of a single shard lives directly in the index directory. An index of N shards lives in the
+ * sub directories shard-0 to shard-(N-1) of the index directory.
+ * Documents are routed to the shards by the murmur3 hash of their {@value AppConstants#FIELD_ID}.
+ * Documents without an id go to the first shard.
+ */
+public final class IndexShards {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IndexShards.class);
+
+    static final String SHARD_PREFIX = "shard-";
+
+    private IndexShards() {
+    }
+
+    /**
+     * @param id            Id of the document. Null or empty for documents without an id.
+     * @param shardCount    Number of shards.
+     * @return Index of the shard the document belongs to.
+     */
+    public static int shardFor(String id, int shardCount) {
+        if (shardCount == 1 || id == null || id.isEmpty()) {
+            return 0;
+        }
+        return Math.floorMod(StringHelper.murmurhash3_x86_32(new BytesRef(id), 0), shardCount);
+    }
+
+    /**
+     * @param root          Index directory.
+     * @param shardCount    Number of shards.
+     * @return Directories of the shards, in order.
+     */
+    public static List<Path> layout(Path root, int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Index : Shard count should be positive.");
+        }
+        if (shardCount == 1) {
+            return Collections.singletonList(root);
+        }
+        List<Path> shards = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(root.resolve(SHARD_PREFIX + i));
+        }
+        return shards;
+    }
+
+    /**
+     * Find the shards present in the given index directory.
+     *
+     * @param root  Index directory.
+     * @return Directories of the shards, in order. The index directory itself in case it is not sharded.
+     * @throws IOException In case of low-level IO errors.
+     */
+    public static List<Path> detect(Path root) throws IOException {
+        TreeMap<Integer, Path> shards = listShards(root);
+        if (shards.isEmpty()) {
+            return Collections.singletonList(root);
+        }
+        if (shards.firstKey() != 0 || shards.lastKey() != shards.size() - 1) {
+            throw new AppRuntimeException("Index : Shards in " + root + " are not numbered contiguously " + shards.keySet());
+        }
+        return new ArrayList<>(shards.values());
+    }
+
+    /**
+     * @param path  Directory of an index or a shard.
+     * @return Does the directory hold an index?
+     * @throws IOException In case of low-level IO errors.
+     */
+    static boolean indexExists(Path path) throws IOException {
+        try (Directory directory = MMapDirectory.open(path)) {
+            return DirectoryReader.indexExists(directory);
+        }
+    }
+
+    /**
+     * Delete the shard directories which are not part of a layout of the given number of shards.
+     * Called by full builds so that searchers do not pick up the shards of an older layout.
+     *
+     * @param root          Index directory.
+     * @param shardCount    Number of shards in the new layout.
+     * @throws IOException In case of low-level IO errors.
+     */
+    static void removeStaleShards(Path root, int shardCount) throws IOException {
+        for (Map.Entry<Integer, Path> shard : listShards(root).entrySet()) {
+            if (shardCount == 1 || shard.getKey() >= shardCount) {
+                LOGGER.info("Index : Removing the stale shard {}", shard.getValue());
+                deleteRecursively(shard.getValue());
+            }
+        }
+    }
+
+    private static TreeMap<Integer, Path> listShards(Path root) throws IOException {
+        TreeMap<Integer, Path> shards = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(root, SHARD_PREFIX + "*")) {
+            for (Path path : stream) {
+                String suffix = path.getFileName().toString().substring(SHARD_PREFIX.length());
+                if (Files.isDirectory(path) && !suffix.isEmpty() && suffix.chars().allMatch(Character::isDigit)) {
+                    shards.put(Integer.parseInt(suffix), path);
+                }
+            }
+        }
+        return shards;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path d, IOException exc) throws IOException {
+                Files.delete(d);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
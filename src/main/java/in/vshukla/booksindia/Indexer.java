@@ -2,18 +2,32 @@ package in.vshukla.booksindia;
 
 import in.vshukla.booksindia.exceptions.AppRuntimeException;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.document.Field;
-import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.SegmentCommitInfo;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.ControlledRealTimeReopenThread;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  *
@@ -23,57 +37,391 @@ public class Indexer implements AutoCloseable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Indexer.class);
 
-    private IndexWriter indexWriter;
+    // One writer per shard. Documents are routed by IndexShards.shardFor.
+    private IndexWriter[] indexWriters;
+
+    private final IndexSchema schema = IndexSchema.forBooks();
+
+    private final DocumentMappers mappers = new DocumentMappers(schema);
+
+    private boolean incremental;
+
+    private IndexProfile profile;
+
+    private final IndexerMetrics metrics = new IndexerMetrics();
+
+    private ReferenceManager<IndexSearcher> nrtManager;
+
+    private ControlledRealTimeReopenThread<IndexSearcher> reopenThread;
+
+    /**
+     * Highest id indexed so far. Persisted in the commit user data as {@value AppConstants#COMMIT_LAST_ID}
+     * once the ingest is marked complete.
+     */
+    private final AtomicLong lastId = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * Id recorded by the last commit, up to which all the documents are known to be indexed.
+     */
+    private final AtomicLong checkpointId = new AtomicLong(Long.MIN_VALUE);
+
+    private volatile boolean complete;
 
     public void initialize () throws IOException {
         String idxDirStr = AppUtils.getProperty(AppConstants.PROP_IDX_LOC, () -> AppConstants.DEFAULT_IDX_LOC);
-        initialize(idxDirStr);
+        String mode = AppUtils.getProperty(AppConstants.PROP_IDX_MODE, () -> AppConstants.DEFAULT_IDX_MODE);
+        initialize(idxDirStr, AppConstants.IDX_MODE_INCREMENTAL.equalsIgnoreCase(mode));
     }
 
     @Override
     public void close () throws IOException {
-        assert indexWriter != null : "Index : Not initialized.";
-        indexWriter.close();
+        assert indexWriters != null : "Index : Not initialized.";
+        closeNrt();
+        // Ids are inserted out of order. So, unless the ingest completed, rows below the highest id may be missing.
+        long id = complete ? lastId.get() : checkpointId.get();
+        if (!complete && lastId.get() > id) {
+            LOGGER.warn("Index : Ingest did not complete. Keeping the high-water mark at the last checkpoint {}.",
+                    id == Long.MIN_VALUE ? "none" : id);
+        }
+        if (id != Long.MIN_VALUE) {
+            setCommitId(id);
+        }
+        try {
+            int segments = profile.getForceMergeSegments();
+            // Merging rewrites the whole index. Only worth it at the end of a full build, not for an update or an
+            // ingest which is going to be resumed.
+            if (segments > 0 && complete && !incremental) {
+                forceMerge(segments);
+            } else if (segments > 0) {
+                LOGGER.info("Index : Skipping the force merge into {} segments. Complete : {}, Incremental : {}",
+                        segments, complete, incremental);
+            }
+            for (IndexWriter indexWriter : indexWriters) {
+                indexWriter.commit();
+            }
+            logSegments();
+        } finally {
+            try {
+                IOUtils.close(indexWriters);
+            } finally {
+                AppUtils.unregisterMBean(IndexerMetrics.JMX_TYPE, metrics);
+                LOGGER.info("Index : Closed. {}", metrics);
+            }
+        }
     }
 
     public void initialize (String idxDirStr) throws IOException {
+        initialize(idxDirStr, false);
+    }
+
+    /**
+     * Open the index in the given directory, split into {@value AppConstants#PROP_IDX_SHARDS} shards.
+     *
+     * @see #initialize(String, boolean, int)
+     */
+    public void initialize (String idxDirStr, boolean incremental) throws IOException {
+        initialize(idxDirStr, incremental, AppUtils.getIntProperty(AppConstants.PROP_IDX_SHARDS, AppConstants.DEFAULT_IDX_SHARDS));
+    }
+
+    /**
+     * Open the index in the given directory, tuned as per {@value AppConstants#PROP_IDX_PROFILE}.
+     *
+     * @see #initialize(String, boolean, int, IndexProfile)
+     */
+    public void initialize (String idxDirStr, boolean incremental, int shardCount) throws IOException {
+        initialize(idxDirStr, incremental, shardCount, IndexProfile.fromProperty());
+    }
+
+    /**
+     * Open the index in the given directory.
+     * A full build recreates the index. An incremental build appends to the existing index and
+     * picks up the high-water mark left behind by the last commit.
+     * An index of more than one shard is written to a directory per shard, see {@link IndexShards}.
+     *
+     * @param idxDirStr     Directory holding the index.
+     * @param incremental   Should the existing index be updated instead of being recreated?
+     * @param shardCount    Number of shards. An incremental build should use the shard count of the existing index.
+     * @param profile       Tuning of the writers.
+     * @throws IOException  In case of low-level IO errors.
+     */
+    public void initialize (String idxDirStr, boolean incremental, int shardCount, IndexProfile profile) throws IOException {
         AppUtils.blankStringCheck(idxDirStr, "Index : Cannot work with a blank directory.");
         if (!AppUtils.directoryExists(idxDirStr)) {
             throw new AppRuntimeException("Index : Given directory does not exist " + idxDirStr);
         }
-        Directory directory = MMapDirectory.open(Paths.get(idxDirStr));
+        Path root = Paths.get(idxDirStr);
+        List<Path> shardPaths = IndexShards.layout(root, shardCount);
+
+        this.incremental = incremental;
+        this.profile = profile;
+        if (incremental) {
+            List<Path> existing = IndexShards.detect(root);
+            if (existing.size() != shardCount && IndexShards.indexExists(existing.get(0))) {
+                throw new AppRuntimeException("Index : Existing index has " + existing.size() + " shards. Cannot update it with "
+                        + shardCount + " shards. Rebalance it using ShardRebalancer first.");
+            }
+        } else {
+            IndexShards.removeStaleShards(root, shardCount);
+        }
+
+        indexWriters = new IndexWriter[shardCount];
+        IndexWriterConfig.OpenMode openMode = null;
+        // Shards are committed one after the other. A failure in between leaves some of them at an older
+        // checkpoint, so the lowest one is picked up. The rows above it are replaced on being indexed again.
+        long committedId = Long.MAX_VALUE;
+        for (int i = 0; i < shardCount; i++) {
+            Files.createDirectories(shardPaths.get(i));
+            Directory directory = MMapDirectory.open(shardPaths.get(i));
+            if (incremental && DirectoryReader.indexExists(directory)) {
+                String id = SegmentInfos.readLatestCommit(directory).getUserData().get(AppConstants.COMMIT_LAST_ID);
+                if (id != null) {
+                    committedId = Math.min(committedId, Long.parseLong(id));
+                }
+            }
+
+            // Creating a writerConfig with StandardAnalyzer. Can be changed suiting the needs.
+            IndexWriterConfig writerConfig = new IndexWriterConfig();
+            // Incremental builds keep the existing documents and replace the changed ones.
+            writerConfig.setOpenMode(incremental ? IndexWriterConfig.OpenMode.CREATE_OR_APPEND : IndexWriterConfig.OpenMode.CREATE);
+            writerConfig.setInfoStream(metrics.newFlushCounter());
+            ConcurrentMergeScheduler mergeScheduler = metrics.newMergeScheduler();
+            writerConfig.setMergeScheduler(mergeScheduler);
+            profile.configure(writerConfig, mergeScheduler, shardCount);
+            openMode = writerConfig.getOpenMode();
+            indexWriters[i] = new IndexWriter(directory, writerConfig);
+        }
+        if (committedId != Long.MAX_VALUE) {
+            lastId.set(committedId);
+            checkpointId.set(committedId);
+        }
+        metrics.setWriters(indexWriters);
+        AppUtils.registerMBean(IndexerMetrics.JMX_TYPE, metrics);
+        LOGGER.info("Indexer initialized. Mode : {}, Profile : {}, Shards : {}, Last indexed id : {}", openMode, profile, shardCount, getLastIndexedId());
+    }
+
+    /**
+     * Commit every shard, recording the given id as the high-water mark.
+     * Every document with an id up to the given one should have been inserted by now, as a resumed
+     * build picks up right after it. Documents with greater ids may have been inserted as well.
+     *
+     * @param id    Id up to which all the documents have been inserted.
+     * @throws IOException In case of low-level IO errors.
+     */
+    public void checkpoint (long id) throws IOException {
+        assert indexWriters != null : "IndexWriter is uninitialized. Initialize it before committing.";
+        long start = System.currentTimeMillis();
+        setCommitId(id);
+        for (IndexWriter indexWriter : indexWriters) {
+            indexWriter.commit();
+        }
+        checkpointId.set(id);
+        LOGGER.info("Index : Checkpoint at id {} committed in {} ms.", id, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Mark every document up to the highest id inserted as indexed. Call once the ingest has finished successfully.
+     * Only then {@link #close()} records the highest inserted id as the high-water mark. Otherwise it keeps the id
+     * of the last {@link #checkpoint(long)}, so that a resumed build indexes the rows which might have been missed.
+     */
+    public void markComplete () {
+        complete = true;
+    }
+
+    private void setCommitId (long id) {
+        for (IndexWriter indexWriter : indexWriters) {
+            indexWriter.setLiveCommitData(Collections.singletonMap(AppConstants.COMMIT_LAST_ID, Long.toString(id)).entrySet());
+        }
+    }
+
+    /**
+     * Merge every shard down to at most the given number of segments, waiting for the merges to finish.
+     * Searches are quicker over fewer segments. Best done once the bulk of the documents have been indexed.
+     *
+     * @param maxSegments   Maximum number of segments per shard.
+     * @throws IOException In case of low-level IO errors.
+     */
+    public void forceMerge (int maxSegments) throws IOException {
+        assert indexWriters != null : "IndexWriter is uninitialized. Initialize it before merging.";
+        long start = System.currentTimeMillis();
+        for (IndexWriter indexWriter : indexWriters) {
+            indexWriter.forceMerge(maxSegments);
+        }
+        LOGGER.info("Index : Merged down to {} segments per shard in {} ms.", maxSegments, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Log the segments of the last commit of every shard, with their document counts and sizes.
+     */
+    private void logSegments () throws IOException {
+        long totalBytes = 0;
+        int totalSegments = 0;
+        for (int shard = 0; shard < indexWriters.length; shard++) {
+            SegmentInfos infos = SegmentInfos.readLatestCommit(indexWriters[shard].getDirectory());
+            for (SegmentCommitInfo info : infos) {
+                long bytes = info.sizeInBytes();
+                LOGGER.info("Index : Shard {}, Segment {}. Docs : {}, Deleted : {}, Size : {} KB, Compound : {}", shard,
+                        info.info.name, info.info.maxDoc(), info.getDelCount(), bytes / 1024, info.info.getUseCompoundFile());
+                totalBytes += bytes;
+                totalSegments++;
+            }
+        }
+        LOGGER.info("Index : {} segments over {} shards. Size : {} KB", totalSegments, indexWriters.length, totalBytes / 1024);
+    }
+
+    /**
+     * Open a near-real-time searcher over the live {@link IndexWriter}.
+     * A background thread reopens the searcher so that added documents become searchable
+     * within the given staleness, without committing the index.
+     * The searcher stays usable till this indexer is closed. The searcher manager behind it belongs to this indexer,
+     * and is closed along with it. Closing the returned searcher leaves it open.
+     * A sharded index is searched across all the shards, and reopened periodically instead.
+     *
+     * @param maxStaleMs Maximum delay after which indexed documents are visible to searches.
+     * @return Searcher over the documents indexed so far.
+     * @throws IOException In case of low-level IO errors.
+     */
+    public synchronized BookSearcher openNrtSearcher (long maxStaleMs) throws IOException {
+        assert indexWriters != null : "IndexWriter is uninitialized. Initialize it before searching.";
+        if (nrtManager != null) {
+            return new BookSearcher(nrtManager, schema, BookSearcher.createCache());
+        }
+        BookSearcher bookSearcher;
+        if (indexWriters.length == 1) {
+            nrtManager = new SearcherManager(indexWriters[0], true, false, BookSearcher.searcherFactory());
+            double maxStaleSec = Math.max(1, maxStaleMs) / 1000.0;
+            reopenThread = new ControlledRealTimeReopenThread<>(indexWriters[0], nrtManager, maxStaleSec, Math.min(maxStaleSec, 0.025));
+            reopenThread.setName("nrt-reopen");
+            reopenThread.setDaemon(true);
+            reopenThread.start();
+            bookSearcher = new BookSearcher(nrtManager, schema, BookSearcher.createCache());
+        } else {
+            // ControlledRealTimeReopenThread tracks a single writer. Shards are reopened on a schedule instead.
+            nrtManager = new ShardedSearcherManager(indexWriters, BookSearcher.searcherFactory());
+            bookSearcher = new BookSearcher(nrtManager, schema, BookSearcher.createCache());
+            bookSearcher.startRefresh(Math.max(1, maxStaleMs));
+        }
+        LOGGER.info("Index : Near-real-time searcher opened. Max staleness : {} ms", maxStaleMs);
+        return bookSearcher;
+    }
+
+    private synchronized void closeNrt () throws IOException {
+        if (reopenThread != null) {
+            reopenThread.close();
+            reopenThread = null;
+        }
+        if (nrtManager != null) {
+            nrtManager.close();
+            nrtManager = null;
+        }
+    }
+
+    /**
+     * @return Schema used to turn values into fields.
+     */
+    public IndexSchema getSchema () {
+        return schema;
+    }
 
-        // Creating a writerConfig with StandardAnalyzer. Can be changed suiting the needs.
-        IndexWriterConfig writerConfig = new IndexWriterConfig();
-        // Also, openmode can be set using writerConfig.setOpenMode()
-        // This is the default value
-        writerConfig.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
-        indexWriter = new IndexWriter(directory, writerConfig);
-        LOGGER.info("Indexer initialized.");
+    /**
+     * @return Counters and timers of this indexer. Also exposed over JMX.
+     */
+    public IndexerMetrics getMetrics () {
+        return metrics;
+    }
+
+    /**
+     * @return Number of shards being written.
+     */
+    public int getShardCount () {
+        return indexWriters.length;
+    }
+
+    /**
+     * @return Does this indexer update an existing index?
+     */
+    public boolean isIncremental () {
+        return incremental;
+    }
+
+    /**
+     * Get the high-water mark of the index i.e. the highest id indexed till now.
+     *
+     * @return Highest indexed id. Empty in case nothing has been indexed yet.
+     */
+    public OptionalLong getLastIndexedId () {
+        long id = lastId.get();
+        return id == Long.MIN_VALUE ? OptionalLong.empty() : OptionalLong.of(id);
     }
 
     /**
      * Add the given map as a document to the lucene index.
+     * Every entry is turned into fields as per the {@link IndexSchema}.
+     * In incremental mode, any document having the same {@value AppConstants#FIELD_ID} is replaced.
      *
      * @param map Key-value pairs to be added to the index. The key would become the field name.
      * @throws IOException In case of low-level IO errors.
      */
     public void insert (Map<String, String> map) throws IOException {
-        assert indexWriter != null : "IndexWriter is uninitialized. Initialize it before inserting.";
-        LOGGER.info("Indexing {}", map);
+        assert indexWriters != null : "IndexWriter is uninitialized. Initialize it before inserting.";
+        LOGGER.debug("Indexing {}", map);
         final Document document = new Document();
-        map.forEach((k, v) -> document.add(new StringField(k, v, Field.Store.YES)));
-        indexWriter.addDocument(document);
+        map.forEach((k, v) -> schema.addFields(document, k, v));
+        insert(document);
+    }
+
+    /**
+     * Add the given document to the lucene index.
+     * The document is fully consumed before returning, so its fields can be reused by the caller.
+     * In incremental mode, any document having the same {@value AppConstants#FIELD_ID} is replaced.
+     * The document goes to the shard its id is routed to.
+     *
+     * @param document Document to be indexed.
+     * @throws IOException In case of low-level IO errors.
+     */
+    public void insert (Document document) throws IOException {
+        assert indexWriters != null : "IndexWriter is uninitialized. Initialize it before inserting.";
+        String id = document.get(AppConstants.FIELD_ID);
+        IndexWriter indexWriter = indexWriters[IndexShards.shardFor(id, indexWriters.length)];
+        boolean hasId = id != null && !id.isEmpty();
+        long start = System.nanoTime();
+        if (hasId && incremental) {
+            indexWriter.updateDocument(new Term(AppConstants.FIELD_ID, id), document);
+        } else {
+            indexWriter.addDocument(document);
+        }
+        metrics.recordDocument(document, System.nanoTime() - start);
+        if (hasId) {
+            trackId(id);
+        }
     }
 
     /**
      * Add the given object as a document to the lucene index.
+     * Public fields and getters become fields as per {@link IndexField} and the {@link IndexSchema}, see
+     * {@link DocumentMapper}. Classes are introspected once, on the first object of the class.
+     * Documents are indexed as they are. Maps, and objects of classes the mapper would not convert as Jackson does,
+     * are indexed entry by entry as Jackson converts them.
      *
      * @param object Object to be indexed.
      * @throws IOException In case of low-level IO errors.
      */
     public void insert (Object object) throws IOException {
-        assert indexWriter != null : "IndexWriter is uninitialized. Initialize it before inserting.";
-        insert(AppUtils.getMapFromObject(object));
+        assert indexWriters != null : "IndexWriter is uninitialized. Initialize it before inserting.";
+        if (object instanceof Document) {
+            insert((Document) object);
+        } else if (object instanceof Map || !mappers.isSupported(object.getClass())) {
+            insert(AppUtils.getMapFromObject(object));
+        } else {
+            insert(mappers.toDocument(object));
+        }
+    }
+
+    private void trackId (String id) {
+        try {
+            long value = Long.parseLong(id);
+            lastId.accumulateAndGet(value, Math::max);
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Index : Non numeric id {}. High-water mark not updated.", id);
+        }
     }
 }
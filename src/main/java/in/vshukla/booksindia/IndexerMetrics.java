@@ -0,0 +1,171 @@
+package in.vshukla.booksindia;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.MergePolicy;
+import org.apache.lucene.util.InfoStream;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and timers of an {@link Indexer}, exposed over JMX as {@value #JMX_TYPE}.
+ *
+ * Flushes are counted off the messages IndexWriter emits on its {@link InfoStream} for the "DWPT" component.
+ * Merges are counted and timed by the merge scheduler returned by {@link #newMergeScheduler()}.
+ */
+public class IndexerMetrics implements IndexerMetricsMBean {
+
+    public static final String JMX_TYPE = "Indexer";
+
+    private static final String FLUSH_COMPONENT = "DWPT";
+    private static final String FLUSH_MESSAGE = "flush postings as segment";
+
+    private final LongAdder docsIndexed = new LongAdder();
+    private final LongAdder bytesIndexed = new LongAdder();
+    private final TimerStat addDocument = new TimerStat();
+    private final LongAdder flushes = new LongAdder();
+    private final TimerStat merges = new TimerStat();
+
+    private volatile IndexWriter[] writers = new IndexWriter[0];
+
+    /**
+     * @param writers Writers whose RAM buffers are to be reported.
+     */
+    void setWriters(IndexWriter[] writers) {
+        this.writers = writers;
+    }
+
+    /**
+     * Record a document added to the index.
+     *
+     * @param document  Document which was added.
+     * @param nanos     Time taken to add it.
+     */
+    void recordDocument(Document document, long nanos) {
+        addDocument.record(nanos);
+        docsIndexed.increment();
+        long bytes = 0;
+        for (IndexableField field : document) {
+            String value = field.stringValue();
+            if (value != null) {
+                bytes += value.length();
+            }
+        }
+        bytesIndexed.add(bytes);
+    }
+
+    /**
+     * @return InfoStream counting the flushes. To be set on the IndexWriterConfig.
+     */
+    InfoStream newFlushCounter() {
+        return new InfoStream() {
+            @Override
+            public void message(String component, String message) {
+                if (message.startsWith(FLUSH_MESSAGE)) {
+                    flushes.increment();
+                }
+            }
+
+            @Override
+            public boolean isEnabled(String component) {
+                return FLUSH_COMPONENT.equals(component);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * @return Merge scheduler counting and timing the merges. To be set on the IndexWriterConfig.
+     */
+    ConcurrentMergeScheduler newMergeScheduler() {
+        return new ConcurrentMergeScheduler() {
+            @Override
+            protected void doMerge(IndexWriter writer, MergePolicy.OneMerge merge) throws IOException {
+                long start = System.nanoTime();
+                try {
+                    super.doMerge(writer, merge);
+                } finally {
+                    merges.record(System.nanoTime() - start);
+                }
+            }
+        };
+    }
+
+    @Override
+    public long getDocsIndexed() {
+        return docsIndexed.sum();
+    }
+
+    /**
+     * @return Approximate size of the indexed values, counting a byte per character.
+     */
+    @Override
+    public long getBytesIndexed() {
+        return bytesIndexed.sum();
+    }
+
+    @Override
+    public double getAddDocumentMeanMicros() {
+        return addDocument.getMeanMicros();
+    }
+
+    @Override
+    public double getAddDocumentMaxMicros() {
+        return addDocument.getMaxMicros();
+    }
+
+    @Override
+    public long getFlushCount() {
+        return flushes.sum();
+    }
+
+    @Override
+    public long getMergeCount() {
+        return merges.getCount();
+    }
+
+    @Override
+    public long getMergeTimeMs() {
+        return merges.getTotalNanos() / 1_000_000;
+    }
+
+    @Override
+    public long getRamBufferBytes() {
+        long bytes = 0;
+        for (IndexWriter writer : writers) {
+            if (writer.isOpen()) {
+                bytes += writer.ramBytesUsed();
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public int getRamBufferDocs() {
+        int docs = 0;
+        for (IndexWriter writer : writers) {
+            if (writer.isOpen()) {
+                docs += writer.numRamDocs();
+            }
+        }
+        return docs;
+    }
+
+    @Override
+    public String toString() {
+        return "IndexerMetrics{" +
+                "docsIndexed=" + getDocsIndexed() +
+                ", bytesIndexed=" + getBytesIndexed() +
+                ", addDocument={" + addDocument + "}" +
+                ", flushes=" + getFlushCount() +
+                ", merges={" + merges + "}" +
+                ", ramBufferBytes=" + getRamBufferBytes() +
+                '}';
+    }
+}
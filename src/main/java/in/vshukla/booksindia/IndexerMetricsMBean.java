@@ -0,0 +1,25 @@
+package in.vshukla.booksindia;
+
+/**
+ * JMX view of {@link IndexerMetrics}.
+ */
+public interface IndexerMetricsMBean {
+
+    long getDocsIndexed();
+
+    long getBytesIndexed();
+
+    double getAddDocumentMeanMicros();
+
+    double getAddDocumentMaxMicros();
+
+    long getFlushCount();
+
+    long getMergeCount();
+
+    long getMergeTimeMs();
+
+    long getRamBufferBytes();
+
+    int getRamBufferDocs();
+}
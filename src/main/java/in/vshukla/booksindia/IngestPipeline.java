@@ -0,0 +1,303 @@
+package in.vshukla.booksindia;
+
+import in.vshukla.booksindia.exceptions.AppRuntimeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Two stage ingest, so that fetching rows from the DB overlaps with analysing and indexing them.
+ *
+ * Read stage : the JDBC threads, through {@link #reader()}, copy every row into an immutable {@link Row} and queue it.
+ * Index stage : a pool of workers takes the rows off the queue, builds the documents and adds them to the index.
+ *
+ * The queue is bounded, so a slow index stage holds back the reads. Every stage counts the rows it handled and the
+ * time it spent waiting on the other one. A read stage blocked on a full queue means indexing is the bottleneck.
+ * Workers idling on an empty queue mean the DB is.
+ *
+ * Usage : start the pipeline, feed {@link #reader()} to the fetch, and close the pipeline once the fetch returns.
+ */
+public class IngestPipeline implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IngestPipeline.class);
+
+    // Marks the end of the rows for a worker. Compared by identity.
+    private static final Row END = new Row(new String[0], new String[0]);
+
+    private static final long OFFER_TIMEOUT_MS = 100;
+
+    private static final long DRAIN_POLL_MS = 5;
+
+    private final Indexer indexer;
+
+    private final RowConverter rowConverter;
+
+    private final BlockingQueue<Row> queue;
+
+    private final int workerCount;
+
+    private final List<Thread> workers = new ArrayList<>();
+
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    // Result set being read by the current thread, and its column names.
+    private final ThreadLocal<ResultSet> readerSource = new ThreadLocal<>();
+    private final ThreadLocal<String[]> readerColumns = new ThreadLocal<>();
+
+    // Column names of the result sets seen so far. Rows of equal columns share a single array, even when read from
+    // different result sets, so that workers keep reusing their documents as rows of the partitions interleave.
+    private final List<String[]> layouts = new ArrayList<>();
+
+    private final LongAdder rowsRead = new LongAdder();
+    private final LongAdder readerBlockedNanos = new LongAdder();
+    private final LongAdder rowsIndexed = new LongAdder();
+    private final LongAdder workerIdleNanos = new LongAdder();
+    private final LongAdder workerBusyNanos = new LongAdder();
+
+    private long startNanos;
+
+    private long endNanos;
+
+    /**
+     * @param indexer       Initialized indexer the documents are added to. Not closed by the pipeline.
+     * @param rowConverter  Converter of the rows into documents.
+     * @param queueDepth    Maximum number of rows read ahead of the index stage.
+     * @param workerCount   Number of index stage threads.
+     */
+    public IngestPipeline(Indexer indexer, RowConverter rowConverter, int queueDepth, int workerCount) {
+        AppUtils.nullCheck(indexer, "Ingest : Cannot work without an indexer.");
+        AppUtils.nullCheck(rowConverter, "Ingest : Cannot work without a row converter.");
+        if (queueDepth < 1 || workerCount < 1) {
+            throw new IllegalArgumentException("Ingest : Queue depth and worker count should be positive.");
+        }
+        this.indexer = indexer;
+        this.rowConverter = rowConverter;
+        this.queue = new ArrayBlockingQueue<>(queueDepth);
+        this.workerCount = workerCount;
+    }
+
+    /**
+     * Start the index stage.
+     *
+     * @return This pipeline.
+     */
+    public synchronized IngestPipeline start() {
+        if (!workers.isEmpty()) {
+            return this;
+        }
+        startNanos = System.nanoTime();
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::runWorker, "ingest-worker-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+        LOGGER.info("Ingest : Pipeline started. Queue depth : {}, Workers : {}", queue.remainingCapacity(), workerCount);
+        return this;
+    }
+
+    /**
+     * @return Consumer queueing every row it is called with. May be called concurrently from multiple threads.
+     */
+    public Consumer<ResultSet> reader() {
+        return this::read;
+    }
+
+    private void read(ResultSet resultSet) {
+        try {
+            if (readerSource.get() != resultSet) {
+                readerColumns.set(intern(Row.columnsOf(resultSet.getMetaData())));
+                readerSource.set(resultSet);
+            }
+            enqueue(Row.from(resultSet, readerColumns.get()));
+            rowsRead.increment();
+        } catch (SQLException e) {
+            throw new AppRuntimeException("Ingest : Unable to read the row.", e);
+        }
+    }
+
+    private String[] intern(String[] columns) {
+        synchronized (layouts) {
+            for (String[] layout : layouts) {
+                if (Arrays.equals(layout, columns)) {
+                    return layout;
+                }
+            }
+            layouts.add(columns);
+            return columns;
+        }
+    }
+
+    private void enqueue(Row row) {
+        long start = System.nanoTime();
+        try {
+            // Keeps checking for failed workers, as nobody would take the row off a full queue otherwise.
+            while (!queue.offer(row, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                checkFailure();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AppRuntimeException("Ingest : Interrupted while queueing rows.", e);
+        } finally {
+            readerBlockedNanos.add(System.nanoTime() - start);
+        }
+        checkFailure();
+    }
+
+    /**
+     * Wait for every row queued so far to be indexed. Should be called from the thread feeding {@link #reader()},
+     * so that no rows are queued in the meanwhile.
+     */
+    public void drain() {
+        try {
+            while (rowsIndexed.sum() < rowsRead.sum()) {
+                checkFailure();
+                Thread.sleep(DRAIN_POLL_MS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AppRuntimeException("Ingest : Interrupted while draining the queue.", e);
+        }
+        checkFailure();
+    }
+
+    private void checkFailure() {
+        Throwable cause = failure.get();
+        if (cause != null) {
+            throw new AppRuntimeException("Ingest : Index stage failed.", cause);
+        }
+    }
+
+    private void runWorker() {
+        try {
+            while (true) {
+                long idleStart = System.nanoTime();
+                Row row = queue.take();
+                long busyStart = System.nanoTime();
+                workerIdleNanos.add(busyStart - idleStart);
+                if (row == END) {
+                    return;
+                }
+                indexer.insert(rowConverter.convert(row));
+                rowsIndexed.increment();
+                workerBusyNanos.add(System.nanoTime() - busyStart);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Ingest : Worker failed.", e);
+            failure.compareAndSet(null, e);
+        }
+    }
+
+    /**
+     * Wait for the queued rows to be indexed and stop the index stage.
+     *
+     * @throws IOException In case indexing of any of the rows failed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        for (int i = 0; i < workers.size(); i++) {
+            enqueueEnd();
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AppRuntimeException("Ingest : Interrupted while waiting for the workers.", e);
+            }
+        }
+        workers.clear();
+        endNanos = System.nanoTime();
+        LOGGER.info("Ingest : Pipeline done. {}", getStats());
+
+        Throwable cause = failure.get();
+        if (cause instanceof IOException) {
+            throw (IOException) cause;
+        } else if (cause != null) {
+            throw new AppRuntimeException("Ingest : Index stage failed.", cause);
+        }
+    }
+
+    private void enqueueEnd() {
+        try {
+            // Workers which have failed are not taking rows any more. Make room for the end marker.
+            while (!queue.offer(END, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                if (failure.get() != null) {
+                    queue.clear();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AppRuntimeException("Ingest : Interrupted while stopping the workers.", e);
+        }
+    }
+
+    public Stats getStats() {
+        long end = endNanos == 0 ? System.nanoTime() : endNanos;
+        return new Stats(end - startNanos, workerCount, queue.size(), rowsRead.sum(), readerBlockedNanos.sum(),
+                rowsIndexed.sum(), workerIdleNanos.sum(), workerBusyNanos.sum());
+    }
+
+    /**
+     * Counters of the two stages. Times are in nanoseconds, summed over all the threads of the stage.
+     */
+    public static class Stats {
+        public final long elapsedNanos;
+        public final int workers, queued;
+        public final long rowsRead, readerBlockedNanos;
+        public final long rowsIndexed, workerIdleNanos, workerBusyNanos;
+
+        Stats(long elapsedNanos, int workers, int queued, long rowsRead, long readerBlockedNanos,
+              long rowsIndexed, long workerIdleNanos, long workerBusyNanos) {
+            this.elapsedNanos = elapsedNanos;
+            this.workers = workers;
+            this.queued = queued;
+            this.rowsRead = rowsRead;
+            this.readerBlockedNanos = readerBlockedNanos;
+            this.rowsIndexed = rowsIndexed;
+            this.workerIdleNanos = workerIdleNanos;
+            this.workerBusyNanos = workerBusyNanos;
+        }
+
+        private static long perSec(long count, long nanos) {
+            return nanos <= 0 ? 0 : count * 1_000_000_000L / nanos;
+        }
+
+        /**
+         * @return Share of the workers' time spent waiting for rows. High when the DB is the bottleneck.
+         */
+        public double getWorkerIdleRatio() {
+            long total = workerIdleNanos + workerBusyNanos;
+            return total == 0 ? 0 : (double) workerIdleNanos / total;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "elapsedMs=" + elapsedNanos / 1_000_000 +
+                    ", rowsRead=" + rowsRead +
+                    ", readRate=" + perSec(rowsRead, elapsedNanos) + "/s" +
+                    ", readerBlockedMs=" + readerBlockedNanos / 1_000_000 +
+                    ", rowsIndexed=" + rowsIndexed +
+                    ", indexRate=" + perSec(rowsIndexed, elapsedNanos) + "/s" +
+                    ", workers=" + workers +
+                    ", workerIdle=" + String.format("%.1f%%", 100 * getWorkerIdleRatio()) +
+                    ", queued=" + queued +
+                    '}';
+        }
+    }
+}
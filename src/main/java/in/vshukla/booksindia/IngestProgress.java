@@ -0,0 +1,97 @@
+package in.vshukla.booksindia;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logs the progress of a long running ingest at a fixed interval, off the ingest threads.
+ * A single line per interval replaces logging every document, which slowed the ingest down by itself.
+ *
+ * Reports the rows fetched and the documents indexed so far, the indexing rate over the last interval
+ * and, given the expected number of rows, the completion and the time remaining.
+ */
+public class IngestProgress implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IngestProgress.class);
+
+    private final IndexerMetrics indexerMetrics;
+
+    private final DbMetrics dbMetrics;
+
+    private final long expectedRows;
+
+    private final long startNanos = System.nanoTime();
+
+    private final long startDocs;
+
+    private final ScheduledExecutorService reporter;
+
+    // Touched only by the reporter thread.
+    private long lastNanos = startNanos;
+    private long lastDocs;
+
+    /**
+     * @param indexerMetrics    Metrics of the indexer being fed.
+     * @param dbMetrics         Metrics of the connection the rows are fetched from. May be null.
+     * @param expectedRows      Expected number of rows. Zero or negative when unknown, in which case there is no ETA.
+     * @param intervalSec       Seconds between two reports.
+     */
+    public IngestProgress(IndexerMetrics indexerMetrics, DbMetrics dbMetrics, long expectedRows, int intervalSec) {
+        AppUtils.nullCheck(indexerMetrics, "Progress : Cannot work without the indexer metrics.");
+        if (intervalSec < 1) {
+            throw new IllegalArgumentException("Progress : Interval should be positive.");
+        }
+        this.indexerMetrics = indexerMetrics;
+        this.dbMetrics = dbMetrics;
+        this.expectedRows = expectedRows;
+        this.startDocs = indexerMetrics.getDocsIndexed();
+        this.lastDocs = startDocs;
+        this.reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ingest-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(this::report, intervalSec, intervalSec, TimeUnit.SECONDS);
+    }
+
+    private void report() {
+        long now = System.nanoTime();
+        long docs = indexerMetrics.getDocsIndexed();
+        long done = docs - startDocs;
+        long rate = perSec(docs - lastDocs, now - lastNanos);
+        lastNanos = now;
+        lastDocs = docs;
+
+        String completion = "unknown";
+        String eta = "unknown";
+        if (expectedRows > 0) {
+            completion = String.format("%.1f%%", Math.min(100.0, 100.0 * done / expectedRows));
+            long overallRate = perSec(done, now - startNanos);
+            if (overallRate > 0) {
+                eta = Math.max(0, expectedRows - done) / overallRate + " s";
+            }
+        }
+        LOGGER.info("Ingest : Progress. Rows fetched : {}, Docs indexed : {}, Done : {}, Rate : {} docs/s, ETA : {}, RAM buffer : {} KB",
+                dbMetrics == null ? "-" : dbMetrics.getRowsFetched(), done, completion, rate, eta,
+                indexerMetrics.getRamBufferBytes() / 1024);
+    }
+
+    private static long perSec(long count, long nanos) {
+        return nanos <= 0 ? 0 : count * 1_000_000_000L / nanos;
+    }
+
+    /**
+     * Stop reporting and log the totals.
+     */
+    @Override
+    public void close() {
+        reporter.shutdownNow();
+        long done = indexerMetrics.getDocsIndexed() - startDocs;
+        long elapsed = System.nanoTime() - startNanos;
+        LOGGER.info("Ingest : Indexed {} docs in {} s ({} docs/s).", done, elapsed / 1_000_000_000L, perSec(done, elapsed));
+    }
+}
@@ -0,0 +1,129 @@
+package in.vshukla.booksindia;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Looks documents up by the exact value of an untokenised field, like isbn, gr_id or id.
+ *
+ * Keys are resolved straight through the terms dictionary of every segment using {@link TermsEnum#seekExact(BytesRef)},
+ * without parsing, scoring or collecting. Batches of keys are sorted first, so that the terms dictionary is walked
+ * forward and the blocks it reads are shared by neighbouring keys. Only the requested fields are loaded, through the
+ * {@link DocumentLoader}.
+ *
+ * A key is expected to match a single document. In case it matches more, the first live one is returned.
+ */
+public class KeyLookup {
+
+    private final IndexSchema schema;
+
+    private final DocumentLoader loader;
+
+    public KeyLookup(IndexSchema schema) {
+        AppUtils.nullCheck(schema, "Lucene : Cannot look keys up without a schema.");
+        this.schema = schema;
+        this.loader = new DocumentLoader(schema);
+    }
+
+    /**
+     * Look up a single key.
+     *
+     * @see #lookup(IndexSearcher, String, Collection, Set)
+     */
+    public Document lookup(IndexSearcher searcher, String field, String key, Set<String> fields) throws IOException {
+        return lookup(searcher, field, Collections.singleton(key), fields).get(key);
+    }
+
+    /**
+     * Look up a batch of keys.
+     *
+     * @param searcher  Searcher over the index.
+     * @param field     Untokenised field holding the keys.
+     * @param keys      Keys to be looked up. Need not be sorted.
+     * @param fields    Fields to be loaded. Null or empty to load all the stored fields.
+     * @return Documents of the keys found, in the order of the keys. Keys which are not found are left out.
+     * @throws IOException In case of low-level IO errors.
+     */
+    public Map<String, Document> lookup(IndexSearcher searcher, String field, Collection<String> keys, Set<String> fields)
+            throws IOException {
+        if (schema.getKind(field) == IndexSchema.FieldKind.TEXT) {
+            throw new IllegalArgumentException("Lucene : Cannot look up keys of the analysed field " + field);
+        }
+        // Sorted in the order of the terms dictionary. Keys found are removed, so later segments seek fewer keys.
+        TreeSet<BytesRef> pending = new TreeSet<>();
+        for (String key : keys) {
+            if (key != null) {
+                pending.add(new BytesRef(key));
+            }
+        }
+
+        Map<String, Integer> found = new LinkedHashMap<>();
+        PostingsEnum postings = null;
+        for (LeafReaderContext leaf : searcher.getIndexReader().leaves()) {
+            if (pending.isEmpty()) {
+                break;
+            }
+            Terms terms = leaf.reader().terms(field);
+            if (terms == null) {
+                continue;
+            }
+            TermsEnum termsEnum = terms.iterator();
+            Bits liveDocs = leaf.reader().getLiveDocs();
+            List<BytesRef> resolved = new ArrayList<>();
+            for (BytesRef key : pending) {
+                if (!termsEnum.seekExact(key)) {
+                    continue;
+                }
+                postings = termsEnum.postings(postings, PostingsEnum.NONE);
+                for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+                    if (liveDocs == null || liveDocs.get(doc)) {
+                        found.put(key.utf8ToString(), leaf.docBase + doc);
+                        resolved.add(key);
+                        break;
+                    }
+                }
+            }
+            pending.removeAll(resolved);
+        }
+
+        ScoreDoc[] hits = new ScoreDoc[found.size()];
+        int i = 0;
+        for (int doc : found.values()) {
+            hits[i++] = new ScoreDoc(doc, Float.NaN);
+        }
+        Map<String, Document> byKey = new HashMap<>();
+        Iterator<Document> docs = loader.load(searcher, hits, fields).iterator();
+        for (String key : found.keySet()) {
+            byKey.put(key, docs.next());
+        }
+
+        Map<String, Document> results = new LinkedHashMap<>();
+        for (String key : keys) {
+            Document doc = byKey.get(key);
+            if (doc != null) {
+                results.put(key, doc);
+            }
+        }
+        return results;
+    }
+}
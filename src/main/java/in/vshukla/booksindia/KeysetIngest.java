@@ -0,0 +1,119 @@
+package in.vshukla.booksindia;
+
+import in.vshukla.booksindia.exceptions.AppRuntimeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.OptionalLong;
+import java.util.function.Consumer;
+
+/**
+ * Reads the book table in the order of {@code book.id}, a page at a time, taking checkpoints along the way.
+ *
+ * Every page starts right after the last id of the previous one, so a page is as cheap as the first no matter how deep
+ * into the table it is. Once enough rows have been read, or enough time has passed, a checkpoint is taken at the end of
+ * a page. Every row up to the id of the checkpoint has been read by then, so a failed ingest can be resumed from it.
+ */
+public class KeysetIngest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(KeysetIngest.class);
+
+    private static final String PAGE_SQL = "SELECT * FROM book WHERE id > ? ORDER BY id LIMIT ?";
+    private static final String FIRST_PAGE_SQL = "SELECT * FROM book ORDER BY id LIMIT ?";
+
+    /**
+     * Called at the end of a page with the last id read so far.
+     */
+    @FunctionalInterface
+    public interface Checkpoint {
+        void take(long lastId) throws IOException;
+    }
+
+    private final DbConnection dbConnection;
+
+    private final int pageSize;
+
+    private final long checkpointRows;
+
+    private final long checkpointNanos;
+
+    /**
+     * @param dbConnection      Connection pool used to read the pages.
+     * @param pageSize          Number of rows per page.
+     * @param checkpointRows    Rows after which a checkpoint is taken. 0 to not count rows.
+     * @param checkpointSec     Seconds after which a checkpoint is taken. 0 to not count time.
+     */
+    public KeysetIngest(DbConnection dbConnection, int pageSize, long checkpointRows, long checkpointSec) {
+        AppUtils.nullCheck(dbConnection, "Ingest : Cannot work with a null DB connection.");
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Ingest : Page size should be positive. Found " + pageSize);
+        }
+        this.dbConnection = dbConnection;
+        this.pageSize = pageSize;
+        this.checkpointRows = Math.max(0, checkpointRows);
+        this.checkpointNanos = Math.max(0, checkpointSec) * 1_000_000_000L;
+    }
+
+    /**
+     * Stream the rows of the book table having an id greater than the given one, in the order of the ids.
+     *
+     * @param rowConsumer   Would be called for every row, from the calling thread.
+     * @param afterId       Only the rows with greater ids are read. All the rows in case it is empty.
+     * @param checkpoint    Called whenever a checkpoint is due, and once all the rows have been read.
+     * @return Number of rows processed.
+     * @throws SQLException In case of errors while reading the rows.
+     * @throws IOException  In case the checkpoint fails.
+     */
+    public long run(Consumer<ResultSet> rowConsumer, OptionalLong afterId, Checkpoint checkpoint) throws SQLException, IOException {
+        AppUtils.nullCheck(checkpoint, "Ingest : Cannot work without a checkpoint.");
+        final long[] lastId = {afterId.orElse(Long.MIN_VALUE)};
+        final long[] pageRows = new long[1];
+        final Consumer<ResultSet> trackingConsumer = rs -> {
+            try {
+                lastId[0] = rs.getLong(AppConstants.FIELD_ID);
+            } catch (SQLException e) {
+                throw new AppRuntimeException("Ingest : Unable to read the id.", e);
+            }
+            rowConsumer.accept(rs);
+            pageRows[0]++;
+        };
+
+        long start = System.nanoTime();
+        long rows = 0;
+        long sinceCheckpoint = 0;
+        long checkpointStart = start;
+        boolean started = afterId.isPresent();
+        do {
+            pageRows[0] = 0;
+            // Every page runs the same statement with new bounds. So, it is planned once per connection.
+            if (started) {
+                dbConnection.processLargeResultSet(PAGE_SQL, Arrays.asList(lastId[0], pageSize), trackingConsumer);
+            } else {
+                dbConnection.processLargeResultSet(FIRST_PAGE_SQL, Collections.singletonList(pageSize), trackingConsumer);
+            }
+            started = true;
+            rows += pageRows[0];
+            sinceCheckpoint += pageRows[0];
+
+            long now = System.nanoTime();
+            boolean last = pageRows[0] < pageSize;
+            boolean due = (checkpointRows > 0 && sinceCheckpoint >= checkpointRows)
+                    || (checkpointNanos > 0 && now - checkpointStart >= checkpointNanos);
+            if (sinceCheckpoint > 0 && (last || due)) {
+                checkpoint.take(lastId[0]);
+                LOGGER.info("Ingest : Checkpoint at id {} after {} rows.", lastId[0], rows);
+                sinceCheckpoint = 0;
+                checkpointStart = System.nanoTime();
+            }
+        } while (pageRows[0] == pageSize);
+
+        long elapsedMs = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        LOGGER.info("Ingest : Processed {} rows in id order in {} ms ({} rows/sec).", rows, elapsedMs, rows * 1000 / elapsedMs);
+        return rows;
+    }
+}
@@ -1,34 +1,30 @@
 package in.vshukla.booksindia;
 
-import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queryparser.classic.ParseException;
-import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.PhraseQuery;
 import org.apache.lucene.search.Query;
-import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.TopDocs;
-import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.MMapDirectory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.sql.SQLException;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * Created by venkatesh on 30/4/17.
@@ -40,7 +36,11 @@ public class LuceneShell {
     public static void main(String[] args) throws IOException {
         LuceneShell luceneShell = new LuceneShell();
         String idxDirStr = AppUtils.getProperty(AppConstants.PROP_IDX_LOC, () -> AppConstants.DEFAULT_IDX_LOC);
-        luceneShell.initialize(idxDirStr);
+        if (Boolean.parseBoolean(AppUtils.getProperty(AppConstants.PROP_NRT, () -> AppConstants.DEFAULT_NRT))) {
+            luceneShell.initializeNrt();
+        } else {
+            luceneShell.initialize(idxDirStr);
+        }
     }
 
     private LuceneShell() {
@@ -50,35 +50,130 @@ public class LuceneShell {
 
     private Scanner scanner = new Scanner(System.in);
 
-    private SearcherManager searcherManager;
+    private BookSearcher bookSearcher;
+
+    private static final String CMD_CACHE = ":cache";
+
+    private static final String CMD_NEXT = ":next";
+
+    // Shows the latency percentiles of the queries run so far, per type of query.
+    private static final String CMD_STATS = ":stats";
+
+    // Sets the fields to be shown, for example :fields=id,title. All the stored fields are shown if none are set.
+    private static final String CMD_FIELDS = ":fields=";
+
+    private int pageSize;
+
+    private Set<String> fields = Collections.emptySet();
+
+    // Query shown last and the cursor to its next page. Used by CMD_NEXT.
+    private Query lastQuery;
+
+    private String nextCursor;
 
     private void initialize (String idxDirStr) throws IOException {
-        AppUtils.blankStringCheck(idxDirStr, "Lucene : Cannot initialize a blank directory name.");
-        assert AppUtils.directoryExists(idxDirStr) : "Directory does not exists : " + idxDirStr;
+        bookSearcher = BookSearcher.open(idxDirStr);
+        try {
+            runShell();
+        } finally {
+            bookSearcher.close();
+        }
+    }
 
-        Path idxPath = Paths.get(idxDirStr);
-        Directory idxDir = MMapDirectory.open(idxPath);
-        assert DirectoryReader.indexExists(idxDir) : "No indices present in the directory : " + idxDirStr;
+    /**
+     * Index the book table in the background and search it while it is being built.
+     * Indexed books show up in the results within {@value AppConstants#PROP_NRT_MAX_STALE_MS} ms.
+     * On exit the ingest is stopped and waited for before the searcher and then the indexer are closed.
+     */
+    private void initializeNrt () throws IOException {
+        long maxStaleMs = AppUtils.getIntProperty(AppConstants.PROP_NRT_MAX_STALE_MS, AppConstants.DEFAULT_NRT_MAX_STALE_MS);
+        try (Indexer indexer = new Indexer()) {
+            indexer.initialize();
+            bookSearcher = indexer.openNrtSearcher(maxStaleMs);
 
-        searcherManager = new SearcherManager(idxDir, null);
-        LOGGER.info("Initialized index reader from the directory {}", idxDir);
+            AtomicBoolean stopping = new AtomicBoolean();
+            Thread ingestThread = new Thread(() -> {
+                try {
+                    FetchResult.ingest(DbConnection.getInstance(), indexer, stopping::get);
+                    LOGGER.info("Shell : Background indexing complete.");
+                } catch (SQLException | RuntimeException e) {
+                    if (stopping.get()) {
+                        LOGGER.info("Shell : Background indexing stopped.");
+                    } else {
+                        LOGGER.error("Shell : Background indexing failed.", e);
+                    }
+                }
+            }, "nrt-ingest");
+            ingestThread.setDaemon(true);
+            ingestThread.start();
+
+            try {
+                runShell();
+            } finally {
+                stopping.set(true);
+                joinQuietly(ingestThread);
+                // The searcher leaves the manager open. It is closed along with the indexer.
+                bookSearcher.close();
+            }
+        }
+    }
+
+    private static void joinQuietly (Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Shell : Interrupted while waiting for {} to stop.", thread.getName());
+        }
+    }
+
+    private void runShell () throws IOException {
         LOGGER.info("Number of entries in the index : {}", executeAgainstReader(IndexReader::numDocs));
 
         shellSymbol = AppUtils.getProperty(AppConstants.PROP_PS2, () -> AppConstants.DEFAULT_PS2);
+        pageSize = AppUtils.getIntProperty(AppConstants.PROP_PAGE_SIZE, AppConstants.DEFAULT_PAGE_SIZE);
         printOutput(getUsage(), "\n");
         while(true) {
             printShell();
             String query = getNextQuery();
+            if (query == null) {
+                break;
+            }
+            if (query.isEmpty()) {
+                continue;
+            }
+            if (CMD_CACHE.equals(query)) {
+                printOutput(String.valueOf(bookSearcher.getCache() == null ? "Cache disabled." : bookSearcher.getCache().getStats()), "\n");
+                continue;
+            }
+            if (CMD_STATS.equals(query)) {
+                printOutput(bookSearcher.getQueryStats().getReport());
+                continue;
+            }
+            if (query.startsWith(CMD_FIELDS)) {
+                fields = Arrays.stream(query.substring(CMD_FIELDS.length()).split(","))
+                        .map(String::trim).filter(f -> !f.isEmpty()).collect(Collectors.toCollection(LinkedHashSet::new));
+                printOutput("Showing fields : ", fields.isEmpty() ? "all" : String.join(", ", fields), "\n");
+                continue;
+            }
+            if (CMD_NEXT.equals(query)) {
+                if (nextCursor == null) {
+                    printOutput("No more results.\n");
+                } else {
+                    long start = System.nanoTime();
+                    printPage(getQueryPage(lastQuery, nextCursor), start);
+                }
+                continue;
+            }
             try {
-               List<Document> resultDocList = getQueryResult(query, 25);
-               if (resultDocList == null) {
-                   continue;
-               }
-               if (resultDocList.isEmpty()) {
-                   printOutput("No results found.\n");
+               long start = System.nanoTime();
+               lastQuery = bookSearcher.parse(query);
+               BookSearcher.Page page = getQueryPage(lastQuery, null);
+               if (page != null && page.docs.isEmpty()) {
+                   printOutput(String.format("No results found. Took %.3f ms.%n", (System.nanoTime() - start) / 1e6));
                    continue;
                }
-               resultDocList.forEach(doc -> printDoc(doc));
+               printPage(page, start);
             } catch (ParseException e) {
                 LOGGER.error("Shell : Error parsing query {}", query, e);
             }
@@ -86,16 +181,31 @@ public class LuceneShell {
         }
     }
 
+    /**
+     * @param start Time the query was started at, as per {@link System#nanoTime()}.
+     */
+    private void printPage(BookSearcher.Page page, long start) {
+        if (page == null) {
+            return;
+        }
+        long tookNanos = System.nanoTime() - start;
+        page.docs.forEach(doc -> printDoc(doc));
+        nextCursor = page.nextCursor;
+        printOutput(String.format("%d hits in total. Took %.3f ms.", page.totalHits, tookNanos / 1e6));
+        printOutput(page.hasNext() ? String.format(" Type %s for more.%n", CMD_NEXT) : "\n");
+    }
+
     private void printDoc(Document doc) {
         assert doc != null : "Cannot print null doc";
-        doc.getFields().forEach(f -> printOutput(String.format("%s=%s, ", f.name(), doc.get(f.name()))));
-        printOutput("\n");
+        StringBuilder line = new StringBuilder();
+        for (IndexableField field : doc.getFields()) {
+            line.append(field.name()).append('=').append(field.stringValue()).append(", ");
+        }
+        printOutput(line.append('\n').toString());
     }
 
-    private static final QueryParser PARSER = new QueryParser("title", new StandardAnalyzer());
-
     private List<Document> getQueryResult (String queryStr, final int numResults) throws ParseException {
-        final Query query = PARSER.parse(queryStr);
+        final Query query = bookSearcher.parse(queryStr);
         return getQueryResult(query, numResults);
     }
 
@@ -107,33 +217,31 @@ public class LuceneShell {
     }
 
     private List<Document> getQueryResult (final Query query, final int numResults) {
-        return (List<Document>) executeAgainstSearcher((searcher) -> getResultDocs(searcher, query, numResults));
-    }
-
-    private List<Document> getResultDocs (IndexSearcher searcher, Query query, int numResults) {
         try {
-            TopDocs topDocs = searcher.search(query, numResults);
-            return Arrays.stream(topDocs.scoreDocs)
-                    .map(scoreDoc -> getResultDoc(searcher, scoreDoc.doc))
-                    .filter(doc -> doc != null)
-                    .collect(Collectors.toList());
+            return bookSearcher.search(query, numResults);
         } catch (IOException e) {
             LOGGER.error("Shell : Caught IO Exception", e);
         }
         return null;
     }
 
-    private Document getResultDoc (IndexSearcher searcher, int docId) {
+    private BookSearcher.Page getQueryPage (final Query query, final String cursor) {
         try {
-            return searcher.doc(docId);
+            return bookSearcher.searchPage(query, pageSize, cursor, fields);
         } catch (IOException e) {
-            LOGGER.error("Shell : Caught an IO Exception", e);
+            LOGGER.error("Shell : Caught IO Exception", e);
+        } catch (IllegalArgumentException e) {
+            printOutput(e.getMessage(), "\n");
+            nextCursor = null;
         }
         return null;
     }
 
+    /**
+     * @return Next line of input, so that a query may hold several terms. Null at the end of the input.
+     */
     private String getNextQuery () {
-        return scanner.hasNext() ? scanner.next().trim() : null;
+        return scanner.hasNextLine() ? scanner.nextLine().trim() : null;
     }
 
     private void printShell () {
@@ -144,56 +252,33 @@ public class LuceneShell {
         Arrays.stream(str).forEach(System.out::print);
     }
 
-    private String getUsage() {
-        assert searcherManager != null : "Shell : SearcherManager is not initialized.";
-        return "Available fields : " + ((List<String>) executeAgainstSearcher((is) -> getIndexFieldsQuietly(is)))
-                .stream().collect(Collectors.joining(", "));
-    }
-
-    private List<String> getIndexFieldsQuietly (IndexSearcher indexSearcher) {
-        try {
-            return getIndexFields(indexSearcher);
-        } catch (IOException e) {
-            LOGGER.error("Shell : Caught IO Exception", e);
-        }
-        return null;
+    private String getUsage() throws IOException {
+        assert bookSearcher != null : "Shell : Searcher is not initialized.";
+        return "Available fields : " + ((List<String>) executeAgainstSearcher(this::getIndexFields))
+                .stream().collect(Collectors.joining(", "))
+                + "\nCommands : " + String.join(", ", CMD_NEXT, CMD_FIELDS + "<fields>", CMD_CACHE, CMD_STATS);
     }
 
     private List<String> getIndexFields (IndexSearcher indexSearcher) throws IOException {
         TopDocs topDocs = indexSearcher.search(new MatchAllDocsQuery(), 1);
-        assert topDocs.scoreDocs.length == 1 : "Shell : No results found";
+        if (topDocs.scoreDocs.length == 0) {
+            // Index is still being built.
+            return Collections.emptyList();
+        }
         Document doc = indexSearcher.doc(topDocs.scoreDocs[0].doc);
         assert doc != null : "Shell : Fetched a null doc";
         return doc.getFields().stream().map(IndexableField::name).collect(Collectors.toList());
     }
 
     private Object executeAgainstReader(Function<IndexReader, Object> func) throws IOException {
-        assert searcherManager != null : "Shell : SearcherManager is not initialized.";
-        try {
-            IndexSearcher indexSearcher = searcherManager.acquire();
-            try {
-                return func.apply(indexSearcher.getIndexReader());
-            } finally {
-                searcherManager.release(indexSearcher);
-            }
-        } catch (IOException e) {
-            LOGGER.error("Shell : Caught an IO Exception");
-        }
-        return null;
+        return executeAgainstSearcher((searcher) -> func.apply(searcher.getIndexReader()));
     }
 
-    private Object executeAgainstSearcher(Function<IndexSearcher, Object> func) {
-        assert searcherManager != null : "Shell : SearcherManager is not initialized.";
-        try {
-            IndexSearcher indexSearcher = searcherManager.acquire();
-            try {
-                return func.apply(indexSearcher);
-            } finally {
-                searcherManager.release(indexSearcher);
-            }
-        } catch (IOException e) {
-            LOGGER.error("Shell : Caught an IO Exception");
-        }
-        return null;
+    /**
+     * IO errors are passed on to the caller, as the shell cannot go on without the searcher.
+     */
+    private Object executeAgainstSearcher(BookSearcher.SearcherFunction<Object> func) throws IOException {
+        assert bookSearcher != null : "Shell : Searcher is not initialized.";
+        return bookSearcher.execute(func);
     }
 }
@@ -0,0 +1,201 @@
+package in.vshukla.booksindia;
+
+import in.vshukla.booksindia.exceptions.AppRuntimeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Reads the book table in parallel.
+ * The table is split into key ranges on {@code book.id} and every range is streamed over its own pooled connection.
+ * At most as many ranges as the DB connection pool holds are read at a time. The rest wait for a thread.
+ * All the rows are handed over to a single consumer, which must be thread safe.
+ */
+public class PartitionedIngest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartitionedIngest.class);
+
+    private static final String BOUNDS_SQL = "SELECT min(id), max(id) FROM book";
+    private static final String BOUNDS_AFTER_SQL = BOUNDS_SQL + " WHERE id > ?";
+    private static final String RANGE_SQL = "SELECT * FROM book WHERE id >= ? AND id < ?";
+
+    private final DbConnection dbConnection;
+
+    private final int partitions;
+
+    /**
+     * @param dbConnection  Connection pool used to fetch the bounds and to stream the partitions.
+     * @param partitions    Number of key ranges to be read in parallel.
+     */
+    public PartitionedIngest(DbConnection dbConnection, int partitions) {
+        AppUtils.nullCheck(dbConnection, "Ingest : Cannot work with a null DB connection.");
+        if (partitions < 1) {
+            throw new IllegalArgumentException("Ingest : Number of partitions should be positive. Found " + partitions);
+        }
+        this.dbConnection = dbConnection;
+        this.partitions = partitions;
+    }
+
+    /**
+     * Stream every row of the book table to the given consumer using one thread per partition.
+     *
+     * @param rowConsumer   Would be called for every row. Called concurrently from multiple threads.
+     * @return Number of rows processed.
+     * @throws SQLException In case any of the partitions fails.
+     */
+    public long run(Consumer<ResultSet> rowConsumer) throws SQLException {
+        return run(rowConsumer, OptionalLong.empty());
+    }
+
+    /**
+     * Stream the rows of the book table having an id greater than the given one.
+     *
+     * @param rowConsumer   Would be called for every row. Called concurrently from multiple threads.
+     * @param afterId       Only the rows with greater ids are read. All the rows in case it is empty.
+     * @return Number of rows processed.
+     * @throws SQLException In case any of the partitions fails.
+     */
+    public long run(Consumer<ResultSet> rowConsumer, OptionalLong afterId) throws SQLException {
+        List<KeyRange> ranges = getRanges(afterId);
+        if (ranges.isEmpty()) {
+            LOGGER.info("Ingest : No rows found in book table.");
+            return 0;
+        }
+
+        final LongAdder rowCount = new LongAdder();
+        final AtomicBoolean stopped = new AtomicBoolean();
+        final Consumer<ResultSet> countingConsumer = rs -> {
+            if (stopped.get()) {
+                throw new CancellationException("Ingest : Partition stopped.");
+            }
+            rowConsumer.accept(rs);
+            rowCount.increment();
+        };
+
+        // Every range holds a pooled connection till it is read. More threads would only time out waiting for one.
+        int threads = Math.min(ranges.size(), Math.max(1, dbConnection.getPoolStats().maxSize));
+        if (threads < ranges.size()) {
+            LOGGER.info("Ingest : Reading {} partitions, {} at a time as limited by the DB connection pool.", ranges.size(), threads);
+        }
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>(ranges.size());
+        try {
+            for (KeyRange range : ranges) {
+                futures.add(executor.submit(() -> {
+                    LOGGER.info("Ingest : Reading partition {}", range);
+                    dbConnection.processLargeResultSet(RANGE_SQL, Arrays.asList(range.lo, range.hi), countingConsumer);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                awaitPartition(future);
+            }
+        } finally {
+            // Not interrupting the partitions, as they may be indexing and that closes the files of the index.
+            // Ranges yet to start are cancelled and the running ones stop at their next row.
+            stopped.set(true);
+            futures.forEach(future -> future.cancel(false));
+            executor.shutdown();
+            awaitQuietly(executor);
+        }
+
+        long rows = rowCount.sum();
+        long elapsedMs = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        LOGGER.info("Ingest : Processed {} rows from {} partitions in {} ms ({} rows/sec).",
+                rows, ranges.size(), elapsedMs, rows * 1000 / elapsedMs);
+        return rows;
+    }
+
+    private static void awaitQuietly(ExecutorService executor) {
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOGGER.warn("Ingest : Partitions still running after being stopped.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void awaitPartition(Future<?> future) throws SQLException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AppRuntimeException("Ingest : Interrupted while waiting for partitions.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new AppRuntimeException("Ingest : Partition failed.", e.getCause());
+        }
+    }
+
+    /**
+     * Split the id space of the book table into contiguous, equally wide key ranges.
+     *
+     * @param afterId Lower exclusive bound of the ids. Ignored if empty.
+     * @return Key ranges covering all the ids. Empty in case the table is empty.
+     * @throws SQLException In case of errors while fetching the bounds.
+     */
+    private List<KeyRange> getRanges(OptionalLong afterId) throws SQLException {
+        String boundsSql = afterId.isPresent() ? BOUNDS_AFTER_SQL : BOUNDS_SQL;
+        List<Long> boundsParams = afterId.isPresent() ? Collections.singletonList(afterId.getAsLong()) : Collections.emptyList();
+        final long[] bounds = new long[2];
+        final boolean[] found = new boolean[1];
+        dbConnection.processResult(boundsSql, boundsParams, rs -> {
+            try {
+                bounds[0] = rs.getLong(1);
+                found[0] = !rs.wasNull();
+                bounds[1] = rs.getLong(2);
+            } catch (SQLException e) {
+                throw new AppRuntimeException("Ingest : Unable to read id bounds.", e);
+            }
+        });
+
+        List<KeyRange> ranges = new ArrayList<>(partitions);
+        if (!found[0]) {
+            return ranges;
+        }
+        long min = bounds[0];
+        long end = bounds[1] + 1;
+        long step = Math.max(1, (end - min + partitions - 1) / partitions);
+        for (long lo = min; lo < end; lo += step) {
+            ranges.add(new KeyRange(lo, Math.min(lo + step, end)));
+        }
+        return ranges;
+    }
+
+    /**
+     * Half open range of ids [lo, hi).
+     */
+    private static class KeyRange {
+        final long lo, hi;
+
+        KeyRange(long lo, long hi) {
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + lo + ", " + hi + ")";
+        }
+    }
+}
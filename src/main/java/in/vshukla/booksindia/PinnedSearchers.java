@@ -0,0 +1,108 @@
+package in.vshukla.booksindia;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherLifetimeManager;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Keeps searchers open for the cursors pointing into them, so that every page of a query is read from the same
+ * point in time. Works like {@link SearcherLifetimeManager}, which is limited to searchers over a DirectoryReader,
+ * for any reader including the MultiReader over a sharded index.
+ *
+ * A searcher is pinned by taking a reference on its reader and is unpinned once it has not been used for a while.
+ */
+public class PinnedSearchers implements Closeable {
+
+    private final Map<Long, Pinned> byToken = new ConcurrentHashMap<>();
+
+    // Guarded by this.
+    private final Map<IndexReader, Long> tokens = new IdentityHashMap<>();
+
+    // Starting at random, so that tokens handed out before a restart are not mistaken for the current ones.
+    private long nextToken = ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE;
+
+    /**
+     * Pin the given searcher.
+     *
+     * @param searcher  Searcher to be pinned. Pinning it again returns the same token.
+     * @return Token to acquire the searcher with.
+     */
+    public synchronized long record(IndexSearcher searcher) {
+        IndexReader reader = searcher.getIndexReader();
+        Long token = tokens.get(reader);
+        if (token != null) {
+            byToken.get(token).touch();
+            return token;
+        }
+        reader.incRef();
+        token = nextToken++;
+        tokens.put(reader, token);
+        byToken.put(token, new Pinned(searcher));
+        return token;
+    }
+
+    /**
+     * Acquire the searcher pinned under the given token. It should be handed back using {@link #release(IndexSearcher)}.
+     *
+     * @param token Token returned while pinning the searcher.
+     * @return Pinned searcher. Null in case it has been unpinned.
+     */
+    public IndexSearcher acquire(long token) {
+        Pinned pinned = byToken.get(token);
+        if (pinned == null || !pinned.searcher.getIndexReader().tryIncRef()) {
+            return null;
+        }
+        pinned.touch();
+        return pinned.searcher;
+    }
+
+    public void release(IndexSearcher searcher) throws IOException {
+        searcher.getIndexReader().decRef();
+    }
+
+    /**
+     * Unpin the searchers which have not been used for the given time.
+     *
+     * @param maxIdleSec    Maximum idle time of a pinned searcher.
+     * @throws IOException In case of low-level IO errors while closing the searchers.
+     */
+    public synchronized void prune(double maxIdleSec) throws IOException {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<Long, Pinned>> iterator = byToken.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Pinned pinned = iterator.next().getValue();
+            if ((now - pinned.lastUsedNanos) / 1e9 > maxIdleSec) {
+                iterator.remove();
+                tokens.remove(pinned.searcher.getIndexReader());
+                pinned.searcher.getIndexReader().decRef();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        prune(-1);
+    }
+
+    private static class Pinned {
+        final IndexSearcher searcher;
+        volatile long lastUsedNanos;
+
+        Pinned(IndexSearcher searcher) {
+            this.searcher = searcher;
+            touch();
+        }
+
+        void touch() {
+            lastUsedNanos = System.nanoTime();
+        }
+    }
+}
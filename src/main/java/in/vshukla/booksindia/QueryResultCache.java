@@ -0,0 +1,258 @@
+package in.vshukla.booksindia;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.TopDocs;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU cache of search results, keyed on the parsed {@link Query}, the number of results and the projection
+ * of fields the documents were loaded with.
+ * Entries are only valid for the searcher generation they were computed on. The cache holds the results of the
+ * current generation only, and moves on to a newer one through {@link #advance(Object)}, dropping all the results.
+ * Requests still holding an older searcher miss the cache and their results are not cached, so that they never
+ * invalidate the results of the current generation.
+ *
+ * The cache is bounded both by the number of entries and by the approximate heap taken by them.
+ */
+public class QueryResultCache {
+
+    private static final int SCORE_DOC_BYTES = 32;
+    private static final int ENTRY_OVERHEAD_BYTES = 128;
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final boolean cacheDocs;
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private Object generation;
+    private long bytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * @param maxEntries    Maximum number of queries to be cached.
+     * @param maxBytes      Maximum approximate heap to be used by the cached results.
+     * @param cacheDocs     Should the loaded documents be cached along with the top hits?
+     */
+    public QueryResultCache(int maxEntries, long maxBytes, boolean cacheDocs) {
+        if (maxEntries < 1 || maxBytes < 1) {
+            throw new IllegalArgumentException("Cache : Bounds should be positive.");
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.cacheDocs = cacheDocs;
+    }
+
+    /**
+     * @return Are the loaded documents cached as well?
+     */
+    public boolean isCachingDocs() {
+        return cacheDocs;
+    }
+
+    /**
+     * Look up the result of the given query.
+     *
+     * @param generation    Identity of the searcher generation the caller is searching on.
+     * @param query         Parsed query.
+     * @param numResults    Number of results asked for.
+     * @param fields        Projection of fields asked for. Null for all the stored fields.
+     * @return Cached result. Null in case of a miss.
+     */
+    public synchronized Result get(Object generation, Query query, int numResults, Set<String> fields) {
+        if (this.generation == null) {
+            // Nothing is current before the first refresh. So, the generation of the first lookup is.
+            this.generation = generation;
+        }
+        if (!Objects.equals(this.generation, generation)) {
+            misses.increment();
+            return null;
+        }
+        Entry entry = entries.get(new Key(query, numResults, fields));
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.result;
+    }
+
+    /**
+     * Cache the result of the given query.
+     *
+     * @param generation    Identity of the searcher generation the result was computed on.
+     *                      Results of any generation other than the current one are dropped.
+     * @param query         Parsed query.
+     * @param numResults    Number of results asked for.
+     * @param fields        Projection of fields the documents were loaded with. Null for all the stored fields.
+     *                      Should not be modified once cached.
+     * @param topDocs       Top hits.
+     * @param docs          Loaded documents. Ignored unless documents are being cached.
+     */
+    public synchronized void put(Object generation, Query query, int numResults, Set<String> fields, TopDocs topDocs, List<Document> docs) {
+        if (!Objects.equals(this.generation, generation)) {
+            // Computed on a searcher which has since been replaced.
+            return;
+        }
+        Result result = new Result(topDocs, cacheDocs && docs != null ? Collections.unmodifiableList(docs) : null);
+        Entry entry = new Entry(result, weigh(result));
+        if (entry.bytes > maxBytes) {
+            return;
+        }
+        Entry old = entries.put(new Key(query, numResults, fields), entry);
+        if (old != null) {
+            bytes -= old.bytes;
+        }
+        bytes += entry.bytes;
+        evict();
+    }
+
+    /**
+     * Drop all the cached results.
+     */
+    public synchronized void invalidate() {
+        if (!entries.isEmpty()) {
+            invalidations.increment();
+        }
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Move on to the given generation, dropping the results of the previous one. Should be called with the generation
+     * of the current searcher of the {@link ReferenceManager} after it refreshes, as older ones are never current again.
+     *
+     * @param generation    Identity of the searcher generation now current.
+     */
+    public synchronized void advance(Object generation) {
+        if (!Objects.equals(this.generation, generation)) {
+            invalidate();
+            this.generation = generation;
+        }
+    }
+
+    public Stats getStats() {
+        synchronized (this) {
+            return new Stats(entries.size(), bytes, hits.sum(), misses.sum(), evictions.sum(), invalidations.sum());
+        }
+    }
+
+    private void evict() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && iterator.hasNext()) {
+            bytes -= iterator.next().bytes;
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+
+    private long weigh(Result result) {
+        long weight = ENTRY_OVERHEAD_BYTES + (long) SCORE_DOC_BYTES * result.topDocs.scoreDocs.length;
+        if (result.docs != null) {
+            for (Document doc : result.docs) {
+                for (IndexableField field : doc.getFields()) {
+                    String value = field.stringValue();
+                    weight += ENTRY_OVERHEAD_BYTES + (value == null ? 0 : 2L * value.length());
+                }
+            }
+        }
+        return weight;
+    }
+
+    /**
+     * Cached result of a query. The documents are shared between callers and should not be modified.
+     */
+    public static class Result {
+        public final TopDocs topDocs;
+        public final List<Document> docs;
+
+        Result(TopDocs topDocs, List<Document> docs) {
+            this.topDocs = topDocs;
+            this.docs = docs;
+        }
+    }
+
+    private static class Entry {
+        final Result result;
+        final long bytes;
+
+        Entry(Result result, long bytes) {
+            this.result = result;
+            this.bytes = bytes;
+        }
+    }
+
+    private static class Key {
+        final Query query;
+        final int numResults;
+        final Set<String> fields;
+
+        Key(Query query, int numResults, Set<String> fields) {
+            this.query = query;
+            this.numResults = numResults;
+            this.fields = fields;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return numResults == key.numResults && query.equals(key.query) && Objects.equals(fields, key.fields);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * query.hashCode() + numResults) + Objects.hashCode(fields);
+        }
+    }
+
+    public static class Stats {
+        public final int entries;
+        public final long bytes, hits, misses, evictions, invalidations;
+
+        Stats(int entries, long bytes, long hits, long misses, long evictions, long invalidations) {
+            this.entries = entries;
+            this.bytes = bytes;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.invalidations = invalidations;
+        }
+
+        public double getHitRatio() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "entries=" + entries +
+                    ", bytes=" + bytes +
+                    ", hits=" + hits +
+                    ", misses=" + misses +
+                    ", hitRatio=" + String.format("%.3f", getHitRatio()) +
+                    ", evictions=" + evictions +
+                    ", invalidations=" + invalidations +
+                    '}';
+        }
+    }
+}
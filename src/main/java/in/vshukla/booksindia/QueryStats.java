@@ -0,0 +1,215 @@
+package in.vshukla.booksindia;
+
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency of the searches run by a {@link BookSearcher}, per type of query, exposed over JMX as {@value #JMX_TYPE}.
+ *
+ * Every search records the time taken to parse it, to search the index, to fetch the stored fields of the hits, and
+ * the number of hits, into {@link LatencyHistogram}s. Recording takes no locks. The type of a query is the name of its
+ * class, like TermQuery or BooleanQuery.
+ *
+ * Searches taking more than {@value AppConstants#PROP_SLOW_QUERY_MS} ms to search and fetch are logged to the
+ * {@value #SLOW_LOGGER_NAME} logger, along with the rewritten query, which shows the terms a wildcard or fuzzy query
+ * expanded to.
+ */
+public class QueryStats implements QueryStatsMBean {
+
+    public static final String JMX_TYPE = "QueryStats";
+
+    public static final String SLOW_LOGGER_NAME = "in.vshukla.booksindia.SlowQueries";
+
+    private static final Logger SLOW_LOGGER = LoggerFactory.getLogger(SLOW_LOGGER_NAME);
+
+    private final ConcurrentMap<String, TypeStats> byType = new ConcurrentHashMap<>();
+
+    private final TypeStats all = new TypeStats();
+
+    private final LongAdder slowQueries = new LongAdder();
+
+    private final long slowNanos;
+
+    /**
+     * @param slowMs Searches taking longer are logged as slow. Negative to log none.
+     */
+    public QueryStats(long slowMs) {
+        this.slowNanos = slowMs < 0 ? Long.MAX_VALUE : slowMs * 1_000_000L;
+    }
+
+    /**
+     * @return Stats with the threshold set by {@value AppConstants#PROP_SLOW_QUERY_MS}.
+     */
+    public static QueryStats create() {
+        return new QueryStats(AppUtils.getIntProperty(AppConstants.PROP_SLOW_QUERY_MS, AppConstants.DEFAULT_SLOW_QUERY_MS));
+    }
+
+    /**
+     * @param query Query parsed.
+     * @param nanos Time taken to parse it.
+     */
+    void recordParse(Query query, long nanos) {
+        typeStats(query).parse.record(nanos);
+        all.parse.record(nanos);
+    }
+
+    /**
+     * Record a search, logging it in case it is slow.
+     *
+     * @param searcher      Searcher the query ran against. Used to rewrite slow queries.
+     * @param query         Query searched.
+     * @param searchNanos   Time taken to collect the hits.
+     * @param fetchNanos    Time taken to load the stored fields of the hits.
+     * @param hits          Total number of hits.
+     */
+    void recordSearch(IndexSearcher searcher, Query query, long searchNanos, long fetchNanos, int hits) {
+        long total = searchNanos + fetchNanos;
+        typeStats(query).record(searchNanos, fetchNanos, total, hits);
+        all.record(searchNanos, fetchNanos, total, hits);
+        if (total >= slowNanos) {
+            slowQueries.increment();
+            if (SLOW_LOGGER.isWarnEnabled()) {
+                SLOW_LOGGER.warn("Slow query : {} ms (search {} ms, fetch {} ms), Hits : {}, Query : {}, Rewritten : {}",
+                        toMs(total), toMs(searchNanos), toMs(fetchNanos), hits, query, rewrite(searcher, query));
+            }
+        }
+    }
+
+    private static Object rewrite(IndexSearcher searcher, Query query) {
+        try {
+            return searcher.rewrite(query);
+        } catch (IOException | RuntimeException e) {
+            return "<unable to rewrite : " + e.getMessage() + ">";
+        }
+    }
+
+    private TypeStats typeStats(Query query) {
+        return byType.computeIfAbsent(typeOf(query), type -> new TypeStats());
+    }
+
+    /**
+     * @return Simple name of the class of the query. Anonymous classes, like the range queries of points, are named
+     * after the class they extend.
+     */
+    static String typeOf(Query query) {
+        Class<?> type = query.getClass();
+        while (type.isAnonymousClass()) {
+            type = type.getSuperclass();
+        }
+        return type.getSimpleName();
+    }
+
+    @Override
+    public long getQueries() {
+        return all.searches.sum();
+    }
+
+    @Override
+    public long getSlowQueries() {
+        return slowQueries.sum();
+    }
+
+    @Override
+    public double getP50Ms() {
+        return toMs(all.total.snapshot().percentile(50));
+    }
+
+    @Override
+    public double getP95Ms() {
+        return toMs(all.total.snapshot().percentile(95));
+    }
+
+    @Override
+    public double getP99Ms() {
+        return toMs(all.total.snapshot().percentile(99));
+    }
+
+    @Override
+    public double getMaxMs() {
+        return toMs(all.total.snapshot().max());
+    }
+
+    /**
+     * @return Counts and latency percentiles of every type of query, and of all of them together.
+     */
+    @Override
+    public String getReport() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Searches : %d, Slow : %d%n", getQueries(), getSlowQueries()));
+        for (Map.Entry<String, TypeStats> entry : new TreeMap<>(byType).entrySet()) {
+            entry.getValue().appendTo(report.append(entry.getKey()).append('\n'));
+        }
+        all.appendTo(report.append("All queries\n"));
+        return report.toString();
+    }
+
+    @Override
+    public void reset() {
+        byType.clear();
+        all.reset();
+        slowQueries.reset();
+    }
+
+    @Override
+    public String toString() {
+        return getReport();
+    }
+
+    private static double toMs(long nanos) {
+        return nanos / 1e6;
+    }
+
+    /**
+     * Histograms of a single type of query.
+     */
+    private static class TypeStats {
+        final LatencyHistogram parse = new LatencyHistogram();
+        final LatencyHistogram search = new LatencyHistogram();
+        final LatencyHistogram fetch = new LatencyHistogram();
+        final LatencyHistogram total = new LatencyHistogram();
+        // Counts rather than nanoseconds. Shows up the queries matching far more than the rest.
+        final LatencyHistogram hitCounts = new LatencyHistogram();
+        final LongAdder searches = new LongAdder();
+        final LongAdder hits = new LongAdder();
+
+        void record(long searchNanos, long fetchNanos, long totalNanos, int hitCount) {
+            search.record(searchNanos);
+            fetch.record(fetchNanos);
+            total.record(totalNanos);
+            hitCounts.record(hitCount);
+            searches.increment();
+            hits.add(hitCount);
+        }
+
+        void appendTo(StringBuilder report) {
+            long count = searches.sum();
+            report.append(String.format("  searches : %d, hits/search : %.1f%n", count, count == 0 ? 0.0 : (double) hits.sum() / count));
+            report.append("  parse  : ").append(parse.snapshot()).append('\n');
+            report.append("  search : ").append(search.snapshot()).append('\n');
+            report.append("  fetch  : ").append(fetch.snapshot()).append('\n');
+            report.append("  total  : ").append(total.snapshot()).append('\n');
+            LatencyHistogram.Snapshot hitSnapshot = hitCounts.snapshot();
+            report.append(String.format("  hits   : p50=%d, p95=%d, p99=%d, max=%d%n", hitSnapshot.percentile(50),
+                    hitSnapshot.percentile(95), hitSnapshot.percentile(99), hitSnapshot.max()));
+        }
+
+        void reset() {
+            parse.reset();
+            search.reset();
+            fetch.reset();
+            total.reset();
+            hitCounts.reset();
+            searches.reset();
+            hits.reset();
+        }
+    }
+}
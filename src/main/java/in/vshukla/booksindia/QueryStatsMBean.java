@@ -0,0 +1,23 @@
+package in.vshukla.booksindia;
+
+/**
+ * JMX view of {@link QueryStats}.
+ */
+public interface QueryStatsMBean {
+
+    long getQueries();
+
+    long getSlowQueries();
+
+    double getP50Ms();
+
+    double getP95Ms();
+
+    double getP99Ms();
+
+    double getMaxMs();
+
+    String getReport();
+
+    void reset();
+}
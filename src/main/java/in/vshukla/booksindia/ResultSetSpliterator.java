@@ -0,0 +1,174 @@
+package in.vshukla.booksindia;
+
+import in.vshukla.booksindia.exceptions.AppRuntimeException;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator reading the rows of a forward only result set one at a time, as they are consumed. Every row is copied
+ * into a {@link Row}, so the live cursor never leaves this class.
+ *
+ * The result set can only be read by one thread. So, splits do not share the cursor. They read the next batch of rows
+ * into memory and hand it over, so that a parallel stream processes the batches fetched so far on other threads while
+ * this one fetches more. The size of a batch should match the fetch size, as those rows are in memory anyway.
+ *
+ * Once the rows run out, reading them fails or {@link #close()} is called, the given close action is run.
+ * It is run at most once.
+ */
+class ResultSetSpliterator implements Spliterator<Row> {
+
+    private static final int CHARACTERISTICS = ORDERED | NONNULL | IMMUTABLE;
+
+    private final ResultSet resultSet;
+
+    private final int batchSize;
+
+    private final DbMetrics metrics;
+
+    private final Runnable onClose;
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private String[] columns;
+
+    private boolean exhausted;
+
+    /**
+     * @param resultSet     Executed result set, positioned before the first row.
+     * @param batchSize     Rows handed over by a split.
+     * @param metrics       Records the time taken by every fetch. May be null.
+     * @param onClose       Run once there are no more rows or on close. Should release the result set.
+     */
+    ResultSetSpliterator(ResultSet resultSet, int batchSize, DbMetrics metrics, Runnable onClose) {
+        this.resultSet = resultSet;
+        this.batchSize = Math.max(1, batchSize);
+        this.metrics = metrics;
+        this.onClose = onClose;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Row> action) {
+        Row row = next();
+        if (row == null) {
+            return false;
+        }
+        action.accept(row);
+        return true;
+    }
+
+    /**
+     * @return Next row. Null in case there are no more.
+     */
+    private Row next() {
+        if (exhausted || closed.get()) {
+            return null;
+        }
+        try {
+            long start = System.nanoTime();
+            boolean hasRow = resultSet.next();
+            if (metrics != null) {
+                metrics.recordFetch(System.nanoTime() - start, hasRow);
+            }
+            if (!hasRow) {
+                exhaust();
+                return null;
+            }
+            if (columns == null) {
+                columns = Row.columnsOf(resultSet.getMetaData());
+            }
+            return Row.from(resultSet, columns);
+        } catch (SQLException e) {
+            exhaust();
+            throw new AppRuntimeException("DB : Unable to read the next row.", e);
+        }
+    }
+
+    private void exhaust() {
+        exhausted = true;
+        close();
+    }
+
+    /**
+     * Release the result set. Rows not read yet are dropped.
+     */
+    void close() {
+        if (closed.compareAndSet(false, true)) {
+            onClose.run();
+        }
+    }
+
+    /**
+     * @return Spliterator over the next batch of rows. Null in case there are no more.
+     */
+    @Override
+    public Spliterator<Row> trySplit() {
+        List<Row> batch = nextBatch();
+        return batch.isEmpty() ? null : Spliterators.spliterator(batch.toArray(), CHARACTERISTICS);
+    }
+
+    private List<Row> nextBatch() {
+        List<Row> batch = new ArrayList<>(batchSize);
+        Row row;
+        while (batch.size() < batchSize && (row = next()) != null) {
+            batch.add(row);
+        }
+        return batch;
+    }
+
+    @Override
+    public long estimateSize() {
+        return exhausted || closed.get() ? 0 : Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return CHARACTERISTICS;
+    }
+
+    /**
+     * @return Spliterator over the same rows, in lists of the batch size. Only the last list may be shorter.
+     */
+    Spliterator<List<Row>> batches() {
+        return new Batches();
+    }
+
+    /**
+     * Rows of the result set in batches. Splits hand over a single batch, so that the batches are processed in parallel.
+     */
+    private class Batches implements Spliterator<List<Row>> {
+
+        @Override
+        public boolean tryAdvance(Consumer<? super List<Row>> action) {
+            List<Row> batch = nextBatch();
+            if (batch.isEmpty()) {
+                return false;
+            }
+            action.accept(Collections.unmodifiableList(batch));
+            return true;
+        }
+
+        @Override
+        public Spliterator<List<Row>> trySplit() {
+            List<Row> batch = nextBatch();
+            return batch.isEmpty() ? null : Spliterators.spliterator(new Object[]{Collections.unmodifiableList(batch)}, CHARACTERISTICS);
+        }
+
+        @Override
+        public long estimateSize() {
+            return ResultSetSpliterator.this.estimateSize();
+        }
+
+        @Override
+        public int characteristics() {
+            return CHARACTERISTICS;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package in.vshukla.booksindia;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable copy of a single row of a {@link ResultSet}, safe to be handed over to other threads.
+ * Rows read from the same result set share a single array of column names.
+ */
+public final class Row {
+
+    private final String[] columns;
+
+    private final String[] values;
+
+    Row(String[] columns, String[] values) {
+        this.columns = columns;
+        this.values = values;
+    }
+
+    /**
+     * @param metaData  Metadata of a result set.
+     * @return Names of the columns, to be shared by the rows read from the result set.
+     * @throws SQLException In case of errors while reading the metadata.
+     */
+    public static String[] columnsOf(ResultSetMetaData metaData) throws SQLException {
+        String[] columns = new String[metaData.getColumnCount()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = metaData.getColumnName(i + 1);
+        }
+        return columns;
+    }
+
+    /**
+     * Copy the current row of the given result set. Values are cleaned using {@link AppUtils#cleanValue(String)}.
+     *
+     * @param resultSet Result set positioned on the row to be copied.
+     * @param columns   Names of the columns of the result set, as returned by {@link #columnsOf(ResultSetMetaData)}.
+     * @return Copy of the row.
+     * @throws SQLException In case of errors while reading the row.
+     */
+    public static Row from(ResultSet resultSet, String[] columns) throws SQLException {
+        String[] values = new String[columns.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = AppUtils.cleanValue(resultSet.getString(i + 1));
+        }
+        return new Row(columns, values);
+    }
+
+    /**
+     * @return Names of the columns. Shared by all the rows of a result set, and not to be modified.
+     */
+    String[] getColumns() {
+        return columns;
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    /**
+     * @param index Zero based index of the column.
+     * @return Name of the column.
+     */
+    public String getColumnName(int index) {
+        return columns[index];
+    }
+
+    /**
+     * @param index Zero based index of the column.
+     * @return Value of the column.
+     */
+    public String getValue(int index) {
+        return values[index];
+    }
+
+    /**
+     * @param column    Name of the column.
+     * @return Value of the column. Null in case there is no such column.
+     */
+    public String getValue(String column) {
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].equals(column)) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Column names mapped to the values, in the order of the columns.
+     */
+    public Map<String, String> toMap() {
+        Map<String, String> map = new LinkedHashMap<>();
+        for (int i = 0; i < columns.length; i++) {
+            map.put(columns[i], values[i]);
+        }
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return "Row" + Arrays.toString(values);
+    }
+}
@@ -0,0 +1,96 @@
+package in.vshukla.booksindia;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Turns rows of a {@link ResultSet}, or {@link Row}s copied out of one, into Lucene documents.
+ * Column metadata is resolved once per column layout and every thread reuses its own document and fields.
+ * Result sets of the same columns, like those of the partitions of a table, share the layout.
+ * So, the returned document is only valid till the next call to convert on the same thread.
+ */
+public class RowConverter {
+
+    private final IndexSchema schema;
+
+    private final ThreadLocal<State> state = ThreadLocal.withInitial(State::new);
+
+    public RowConverter(IndexSchema schema) {
+        AppUtils.nullCheck(schema, "Index : Cannot convert rows without a schema.");
+        this.schema = schema;
+    }
+
+    /**
+     * Fill the current row of the given result set into the document owned by this thread.
+     *
+     * @param resultSet Result set positioned on the row to be converted.
+     * @return Document holding the row. Reused by the next call on this thread.
+     * @throws SQLException In case of errors while reading the row.
+     */
+    public Document convert(ResultSet resultSet) throws SQLException {
+        State current = state.get();
+        if (current.source != resultSet) {
+            current.bind(resultSet, Row.columnsOf(resultSet.getMetaData()), schema);
+        }
+        for (int i = 0; i < current.specs.length; i++) {
+            current.specs[i].setValue(current.fields[i], AppUtils.cleanValue(resultSet.getString(i + 1)));
+        }
+        return current.document;
+    }
+
+    /**
+     * Fill the given row into the document owned by this thread.
+     *
+     * @param row   Row to be converted.
+     * @return Document holding the row. Reused by the next call on this thread.
+     */
+    public Document convert(Row row) {
+        State current = state.get();
+        // Rows of the same result set share their column names. So, the names are compared only on a change of source.
+        if (current.source != row.getColumns()) {
+            current.bind(row.getColumns(), row.getColumns(), schema);
+        }
+        for (int i = 0; i < current.specs.length; i++) {
+            current.specs[i].setValue(current.fields[i], row.getValue(i));
+        }
+        return current.document;
+    }
+
+    /**
+     * Per thread document along with the column layout of the result set it was built for.
+     */
+    private static class State {
+        // Result set, or the column names shared by its rows, the layout was last checked for.
+        Object source;
+        String[] columns;
+        IndexSchema.FieldSpec[] specs;
+        Field[][] fields;
+        Document document;
+
+        /**
+         * Switch to the given source. The document and fields are only built again in case its columns differ.
+         */
+        void bind(Object source, String[] columns, IndexSchema schema) {
+            this.source = source;
+            if (Arrays.equals(this.columns, columns)) {
+                return;
+            }
+            this.columns = columns;
+            int columnCount = columns.length;
+            specs = new IndexSchema.FieldSpec[columnCount];
+            fields = new Field[columnCount][];
+            document = new Document();
+            for (int i = 0; i < columnCount; i++) {
+                specs[i] = schema.getSpec(columns[i]);
+                fields[i] = specs[i].createFields();
+                for (Field field : fields[i]) {
+                    document.add(field);
+                }
+            }
+        }
+    }
+}
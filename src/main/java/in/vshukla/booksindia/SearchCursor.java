@@ -0,0 +1,91 @@
+package in.vshukla.booksindia;
+
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Opaque position within the results of a query : the last hit handed out along with the token of the
+ * searcher generation it came from, as recorded by {@link PinnedSearchers}.
+ * A hash of the query, the page size and the projection binds the cursor to the request it was handed out for.
+ * Encoded as URL safe base64 so that it can be passed around as a request parameter.
+ */
+public final class SearchCursor {
+
+    private static final int ENCODED_BYTES = Long.BYTES + Integer.BYTES + Integer.BYTES + Float.BYTES + Integer.BYTES;
+
+    private final long searcherToken;
+
+    private final int requestHash;
+
+    private final ScoreDoc after;
+
+    SearchCursor(long searcherToken, int requestHash, ScoreDoc after) {
+        AppUtils.nullCheck(after, "Lucene : Cannot build a cursor without the last hit.");
+        this.searcherToken = searcherToken;
+        this.requestHash = requestHash;
+        this.after = after;
+    }
+
+    /**
+     * @param query     Query being paged through.
+     * @param pageSize  Size of the pages.
+     * @param fields    Projection of fields loaded. Null for all the stored fields.
+     * @return Hash identifying the request a cursor is valid for.
+     */
+    static int requestHash(Query query, int pageSize, Set<String> fields) {
+        return 31 * (31 * query.hashCode() + pageSize) + Objects.hashCode(fields);
+    }
+
+    public long getSearcherToken() {
+        return searcherToken;
+    }
+
+    public int getRequestHash() {
+        return requestHash;
+    }
+
+    public ScoreDoc getAfter() {
+        return after;
+    }
+
+    public String encode() {
+        ByteBuffer buffer = ByteBuffer.allocate(ENCODED_BYTES);
+        buffer.putLong(searcherToken).putInt(requestHash).putInt(after.doc).putFloat(after.score).putInt(after.shardIndex);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    /**
+     * @param encoded   Cursor as returned by {@link #encode()}.
+     * @return Decoded cursor.
+     * @throws IllegalArgumentException In case the cursor is malformed.
+     */
+    public static SearchCursor decode(String encoded) {
+        AppUtils.blankStringCheck(encoded, "Lucene : Cannot decode a blank cursor.");
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(encoded.trim());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor.", e);
+        }
+        if (bytes.length != ENCODED_BYTES) {
+            throw new IllegalArgumentException("Invalid cursor.");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long token = buffer.getLong();
+        int requestHash = buffer.getInt();
+        int doc = buffer.getInt();
+        float score = buffer.getFloat();
+        int shardIndex = buffer.getInt();
+        return new SearchCursor(token, requestHash, new ScoreDoc(doc, score, shardIndex));
+    }
+
+    @Override
+    public String toString() {
+        return encode();
+    }
+}
@@ -0,0 +1,162 @@
+package in.vshukla.booksindia;
+
+import in.vshukla.booksindia.exceptions.AppRuntimeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Closed loop load generator for the {@link SearchServer}.
+ * Every client thread repeatedly sends queries, picked round robin, for the given duration.
+ * Throughput and latency percentiles are reported at the end.
+ *
+ * Usage : SearchLoadGenerator &lt;baseUrl&gt; &lt;clients&gt; &lt;durationSec&gt; [queryFile]
+ */
+public class SearchLoadGenerator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SearchLoadGenerator.class);
+
+    private static final List<String> DEFAULT_QUERIES = Arrays.asList("india", "history", "title:river", "monsoon", "title:(god small things)");
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            LOGGER.error("Usage : SearchLoadGenerator <baseUrl> <clients> <durationSec> [queryFile]");
+            return;
+        }
+        String baseUrl = args[0];
+        int clients = Integer.parseInt(args[1]);
+        long durationMs = Long.parseLong(args[2]) * 1000;
+        List<String> queries = args.length > 3
+                ? Files.readAllLines(Paths.get(args[3]), StandardCharsets.UTF_8).stream()
+                        .map(String::trim).filter(q -> !q.isEmpty()).collect(Collectors.toList())
+                : DEFAULT_QUERIES;
+
+        List<String> urls = new ArrayList<>(queries.size());
+        for (String query : queries) {
+            urls.add(baseUrl + "/search?q=" + URLEncoder.encode(query, StandardCharsets.UTF_8.name()));
+        }
+        new SearchLoadGenerator().run(urls, clients, durationMs);
+    }
+
+    private void run(List<String> urls, int clients, long durationMs) {
+        final LongAdder errors = new LongAdder();
+        final long deadline = System.currentTimeMillis() + durationMs;
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        List<Future<long[]>> futures = new ArrayList<>(clients);
+        long start = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            final int offset = c;
+            futures.add(executor.submit(() -> runClient(urls, offset, deadline, errors)));
+        }
+
+        LatencyRecorder all = new LatencyRecorder();
+        try {
+            for (Future<long[]> future : futures) {
+                all.addAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AppRuntimeException("Load : Interrupted.", e);
+        } catch (ExecutionException e) {
+            throw new AppRuntimeException("Load : Client failed.", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        double elapsedSec = (System.nanoTime() - start) / 1e9;
+
+        long[] latencies = all.sorted();
+        LOGGER.info("Load : {} requests, {} errors, {} clients in {} s. Throughput : {} req/s",
+                latencies.length, errors.sum(), clients, String.format("%.1f", elapsedSec),
+                String.format("%.1f", latencies.length / elapsedSec));
+        LOGGER.info("Load : Latency ms p50 : {}, p95 : {}, p99 : {}, max : {}",
+                millis(percentile(latencies, 50)), millis(percentile(latencies, 95)),
+                millis(percentile(latencies, 99)), millis(latencies.length == 0 ? 0 : latencies[latencies.length - 1]));
+    }
+
+    private long[] runClient(List<String> urls, int offset, long deadline, LongAdder errors) {
+        LatencyRecorder recorder = new LatencyRecorder();
+        byte[] buffer = new byte[8192];
+        int i = offset;
+        while (System.currentTimeMillis() < deadline) {
+            String url = urls.get(i++ % urls.size());
+            long start = System.nanoTime();
+            try {
+                HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+                int status = conn.getResponseCode();
+                try (InputStream is = status < 400 ? conn.getInputStream() : conn.getErrorStream()) {
+                    while (is != null && is.read(buffer) >= 0) {
+                        // Drain the body so that the connection can be kept alive.
+                    }
+                }
+                if (status != 200) {
+                    errors.increment();
+                }
+            } catch (IOException e) {
+                errors.increment();
+                continue;
+            }
+            recorder.add(System.nanoTime() - start);
+        }
+        return recorder.toArray();
+    }
+
+    static long percentile(long[] sorted, double pct) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int idx = (int) Math.ceil(pct / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(idx, sorted.length - 1))];
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3f", nanos / 1e6);
+    }
+
+    /**
+     * Growable array of latencies in nanoseconds.
+     */
+    static class LatencyRecorder {
+        private long[] values = new long[1024];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void addAll(long[] more) {
+            for (long value : more) {
+                add(value);
+            }
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+
+        long[] sorted() {
+            long[] copy = toArray();
+            Arrays.sort(copy);
+            return copy;
+        }
+    }
+}
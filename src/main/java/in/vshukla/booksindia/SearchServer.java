@@ -0,0 +1,368 @@
+package in.vshukla.booksindia;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP/JSON search service over the book index, built on the JDK HTTP server.
+ *
+ * GET  /search?q=title:india&amp;limit=10&amp;fields=id,title&amp;cursor=...
+ * POST /search {"query" : "title:india", "limit" : 10, "fields" : ["id", "title"], "cursor" : "..."}
+ * GET  /suggest?q=the+disc&amp;limit=10&amp;field=title
+ * GET  /lookup?field=isbn&amp;keys=8171673406,8173711461&amp;fields=id,title
+ * POST /lookup {"field" : "isbn", "keys" : ["8171673406", "8173711461"], "fields" : ["id", "title"]}
+ *
+ * Only the listed fields are loaded. All the stored fields are returned in case none are listed.
+ * Results are paged, limit being the page size. The next page is fetched by passing back the nextCursor
+ * of the response along with the same query.
+ *
+ * Lookups fetch the documents having the given values of an untokenised field, like isbn or gr_id, without
+ * searching. See {@link KeyLookup}. Up to {@value AppConstants#MAX_LOOKUP_KEYS} keys are looked up per request.
+ *
+ * Suggestions complete the typed prefix of a title, or of any other field listed in
+ * {@value AppConstants#PROP_SUGGEST_FIELDS}, from memory. See {@link BookSuggester}.
+ *
+ * Requests are served by a pool of {@value AppConstants#PROP_SERVER_THREADS} workers.
+ * A value of 0 uses a virtual thread per request on runtimes supporting them.
+ */
+public class SearchServer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SearchServer.class);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final String NODELAY_PROP = "sun.net.httpserver.nodelay";
+
+    private final BookSearcher bookSearcher;
+
+    private final BookSuggester bookSuggester;
+
+    private HttpServer server;
+
+    private ExecutorService executor;
+
+    public SearchServer(BookSearcher bookSearcher) {
+        this(bookSearcher, null);
+    }
+
+    /**
+     * @param bookSearcher  Searcher serving the searches.
+     * @param bookSuggester Suggester serving the suggestions. Null to not serve them.
+     */
+    public SearchServer(BookSearcher bookSearcher, BookSuggester bookSuggester) {
+        AppUtils.nullCheck(bookSearcher, "Server : Cannot serve without a searcher.");
+        this.bookSearcher = bookSearcher;
+        this.bookSuggester = bookSuggester;
+    }
+
+    public static void main(String[] args) throws IOException {
+        String idxDirStr = AppUtils.getProperty(AppConstants.PROP_IDX_LOC, () -> AppConstants.DEFAULT_IDX_LOC);
+        int port = AppUtils.getIntProperty(AppConstants.PROP_SERVER_PORT, AppConstants.DEFAULT_SERVER_PORT);
+        int threads = AppUtils.getIntProperty(AppConstants.PROP_SERVER_THREADS, AppConstants.DEFAULT_SERVER_THREADS);
+
+        final BookSearcher bookSearcher = BookSearcher.open(idxDirStr);
+        final BookSuggester bookSuggester = BookSuggester.create(bookSearcher);
+        final SearchServer searchServer = new SearchServer(bookSearcher, bookSuggester);
+        searchServer.start(port, threads);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            searchServer.stop();
+            try {
+                bookSuggester.close();
+                bookSearcher.close();
+            } catch (IOException e) {
+                LOGGER.error("Server : Error closing the searcher.", e);
+            }
+        }, "server-shutdown"));
+    }
+
+    /**
+     * Start serving on the given port.
+     *
+     * @param port      Port to listen on.
+     * @param threads   Number of worker threads. 0 for a virtual thread per request where supported.
+     * @throws IOException In case the port cannot be bound.
+     */
+    public void start(int port, int threads) throws IOException {
+        // Headers and body go out as separate writes. Without TCP_NODELAY, every response waits on a delayed ACK.
+        if (System.getProperty(NODELAY_PROP) == null) {
+            System.setProperty(NODELAY_PROP, "true");
+        }
+        executor = createExecutor(threads);
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/search", this::handleSearch);
+        server.createContext("/lookup", this::handleLookup);
+        if (bookSuggester != null) {
+            server.createContext("/suggest", this::handleSuggest);
+        }
+        server.setExecutor(executor);
+        server.start();
+        LOGGER.info("Server : Listening on port {}", port);
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(1);
+        }
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        LOGGER.info("Server : Stopped.");
+    }
+
+    private ExecutorService createExecutor(int threads) {
+        if (threads > 0) {
+            return Executors.newFixedThreadPool(threads);
+        }
+        try {
+            ExecutorService virtual = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            LOGGER.info("Server : Using a virtual thread per request.");
+            return virtual;
+        } catch (ReflectiveOperationException e) {
+            LOGGER.warn("Server : Virtual threads are not supported by this runtime. Using a cached thread pool.");
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    private void handleSearch(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        try {
+            SearchRequest request = "POST".equalsIgnoreCase(exchange.getRequestMethod())
+                    ? SearchRequest.fromJson(MAPPER.readTree(exchange.getRequestBody()))
+                    : SearchRequest.fromQuery(exchange.getRequestURI().getRawQuery());
+            if (request.query == null || request.query.trim().isEmpty()) {
+                sendJson(exchange, 400, Collections.singletonMap("error", "Missing query."));
+                return;
+            }
+
+            BookSearcher.Page page = bookSearcher.searchPage(bookSearcher.parse(request.query), request.limit, request.cursor, request.fields);
+            List<Map<String, String>> results = new ArrayList<>(page.docs.size());
+            for (Document doc : page.docs) {
+                results.add(toMap(doc, request.fields));
+            }
+
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("query", request.query);
+            response.put("count", results.size());
+            response.put("totalHits", page.totalHits);
+            response.put("nextCursor", page.nextCursor);
+            response.put("tookMs", (System.nanoTime() - start) / 1e6);
+            response.put("docs", results);
+            sendJson(exchange, 200, response);
+        } catch (ParseException | IllegalArgumentException e) {
+            sendJson(exchange, 400, Collections.singletonMap("error", e.getMessage()));
+        } catch (JsonProcessingException e) {
+            sendJson(exchange, 400, Collections.singletonMap("error", "Malformed JSON : " + e.getOriginalMessage()));
+        } catch (IOException e) {
+            LOGGER.error("Server : Caught IO Exception", e);
+            sendJson(exchange, 500, Collections.singletonMap("error", "Search failed."));
+        } catch (RuntimeException e) {
+            LOGGER.error("Server : Search failed.", e);
+            sendJson(exchange, 500, Collections.singletonMap("error", "Search failed."));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleLookup(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        try {
+            String field;
+            List<String> keys = new ArrayList<>();
+            Set<String> fields = Collections.emptySet();
+            if ("POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                JsonNode node = MAPPER.readTree(exchange.getRequestBody());
+                field = node == null ? null : node.path("field").asText(null);
+                if (node != null) {
+                    node.path("keys").forEach(k -> keys.add(k.asText()));
+                    if (node.path("fields").isArray()) {
+                        Set<String> projection = new LinkedHashSet<>();
+                        node.path("fields").forEach(f -> projection.add(f.asText()));
+                        fields = projection;
+                    }
+                }
+            } else {
+                Map<String, String> params = parseParams(exchange.getRequestURI().getRawQuery());
+                field = params.get("field");
+                if (params.containsKey("keys")) {
+                    keys.addAll(Arrays.asList(params.get("keys").split(",")));
+                }
+                if (params.containsKey("fields")) {
+                    fields = new LinkedHashSet<>(Arrays.asList(params.get("fields").split(",")));
+                }
+            }
+            if (field == null || field.trim().isEmpty() || keys.isEmpty()) {
+                sendJson(exchange, 400, Collections.singletonMap("error", "Missing field or keys."));
+                return;
+            }
+            if (keys.size() > AppConstants.MAX_LOOKUP_KEYS) {
+                sendJson(exchange, 400, Collections.singletonMap("error", "At most " + AppConstants.MAX_LOOKUP_KEYS + " keys per request."));
+                return;
+            }
+
+            Map<String, Map<String, String>> docs = new LinkedHashMap<>();
+            for (Map.Entry<String, Document> entry : bookSearcher.lookup(field, keys, fields).entrySet()) {
+                docs.put(entry.getKey(), toMap(entry.getValue(), fields));
+            }
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("field", field);
+            response.put("count", keys.size());
+            response.put("found", docs.size());
+            response.put("tookMs", (System.nanoTime() - start) / 1e6);
+            response.put("docs", docs);
+            sendJson(exchange, 200, response);
+        } catch (IllegalArgumentException e) {
+            sendJson(exchange, 400, Collections.singletonMap("error", e.getMessage()));
+        } catch (JsonProcessingException e) {
+            sendJson(exchange, 400, Collections.singletonMap("error", "Malformed JSON : " + e.getOriginalMessage()));
+        } catch (IOException e) {
+            LOGGER.error("Server : Caught IO Exception", e);
+            sendJson(exchange, 500, Collections.singletonMap("error", "Lookup failed."));
+        } catch (RuntimeException e) {
+            LOGGER.error("Server : Lookup failed.", e);
+            sendJson(exchange, 500, Collections.singletonMap("error", "Lookup failed."));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleSuggest(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        try {
+            Map<String, String> params = parseParams(exchange.getRequestURI().getRawQuery());
+            String prefix = params.get("q");
+            String field = params.getOrDefault("field", AppConstants.FIELD_TITLE);
+            int limit = params.containsKey("limit")
+                    ? SearchRequest.clampLimit(Integer.parseInt(params.get("limit"))) : AppConstants.DEFAULT_NUM_SUGGESTIONS;
+            List<String> suggestions = bookSuggester.suggest(field, prefix, limit);
+
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("query", prefix);
+            response.put("field", field);
+            response.put("tookMs", (System.nanoTime() - start) / 1e6);
+            response.put("suggestions", suggestions);
+            sendJson(exchange, 200, response);
+        } catch (IllegalArgumentException e) {
+            sendJson(exchange, 400, Collections.singletonMap("error", e.getMessage()));
+        } catch (IOException e) {
+            LOGGER.error("Server : Caught IO Exception", e);
+            sendJson(exchange, 500, Collections.singletonMap("error", "Suggest failed."));
+        } catch (RuntimeException e) {
+            LOGGER.error("Server : Suggest failed.", e);
+            sendJson(exchange, 500, Collections.singletonMap("error", "Suggest failed."));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static Map<String, String> parseParams(String rawQuery) throws UnsupportedEncodingException {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery != null) {
+            for (String pair : rawQuery.split("&")) {
+                int idx = pair.indexOf('=');
+                if (idx > 0) {
+                    params.put(URLDecoder.decode(pair.substring(0, idx), StandardCharsets.UTF_8.name()),
+                            URLDecoder.decode(pair.substring(idx + 1), StandardCharsets.UTF_8.name()));
+                }
+            }
+        }
+        return params;
+    }
+
+    private Map<String, String> toMap(Document doc, Set<String> fields) {
+        Map<String, String> map = new LinkedHashMap<>();
+        for (IndexableField field : doc.getFields()) {
+            if ((fields.isEmpty() || fields.contains(field.name())) && !map.containsKey(field.name())) {
+                map.put(field.name(), field.stringValue());
+            }
+        }
+        return map;
+    }
+
+    private void sendJson(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] bytes = MAPPER.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    /**
+     * Parameters of a search request.
+     */
+    private static class SearchRequest {
+        String query;
+        int limit = AppConstants.DEFAULT_NUM_RESULTS;
+        String cursor;
+        Set<String> fields = Collections.emptySet();
+
+        static SearchRequest fromJson(JsonNode node) {
+            SearchRequest request = new SearchRequest();
+            if (node == null) {
+                return request;
+            }
+            request.query = node.path("query").asText(null);
+            request.limit = clampLimit(node.path("limit").asInt(AppConstants.DEFAULT_NUM_RESULTS));
+            request.cursor = node.path("cursor").asText(null);
+            if (node.path("fields").isArray()) {
+                Set<String> fields = new LinkedHashSet<>();
+                node.path("fields").forEach(f -> fields.add(f.asText()));
+                request.fields = fields;
+            }
+            return request;
+        }
+
+        static SearchRequest fromQuery(String rawQuery) throws UnsupportedEncodingException {
+            Map<String, String> params = parseParams(rawQuery);
+            SearchRequest request = new SearchRequest();
+            request.query = params.get("q");
+            request.cursor = params.get("cursor");
+            if (params.containsKey("limit")) {
+                request.limit = clampLimit(Integer.parseInt(params.get("limit")));
+            }
+            if (params.containsKey("fields")) {
+                request.fields = new LinkedHashSet<>(Arrays.asList(params.get("fields").split(",")));
+            }
+            return request;
+        }
+
+        private static int clampLimit(int limit) {
+            if (limit < 1) {
+                throw new IllegalArgumentException("Limit should be positive.");
+            }
+            return Math.min(limit, AppConstants.MAX_NUM_RESULTS);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package in.vshukla.booksindia;
+
+import in.vshukla.booksindia.exceptions.AppRuntimeException;
+import org.apache.lucene.index.CodecReader;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FilterCodecReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SlowCodecReaderWrapper;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Copies an index into a new layout of the given number of shards, routing every document as the {@link Indexer} would.
+ *
+ * Segments are copied at the codec level using {@link IndexWriter#addIndexes(CodecReader...)}, every target shard
+ * seeing only the documents routed to it. So, documents are neither re-analysed nor rebuilt from the stored fields,
+ * and fields which are not stored survive the move. Documents are routed using the doc values of
+ * {@value AppConstants#FIELD_ID}.
+ *
+ * The source index is left untouched. Point {@value AppConstants#PROP_IDX_LOC} to the target once done.
+ *
+ * Usage : ShardRebalancer &lt;sourceDir&gt; &lt;targetDir&gt; &lt;shards&gt;
+ */
+public class ShardRebalancer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShardRebalancer.class);
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            LOGGER.error("Usage : ShardRebalancer <sourceDir> <targetDir> <shards>");
+            return;
+        }
+        new ShardRebalancer().rebalance(Paths.get(args[0]), Paths.get(args[1]), Integer.parseInt(args[2]));
+    }
+
+    /**
+     * @param source        Directory of the index to be rebalanced.
+     * @param target        Directory of the rebalanced index. Should not hold an index.
+     * @param shardCount    Number of shards of the rebalanced index.
+     * @throws IOException In case of low-level IO errors.
+     */
+    public void rebalance(Path source, Path target, int shardCount) throws IOException {
+        if (source.toAbsolutePath().normalize().equals(target.toAbsolutePath().normalize())) {
+            throw new AppRuntimeException("Rebalance : Target should be different from the source " + source);
+        }
+        Files.createDirectories(target);
+        if (IndexShards.detect(target).size() > 1 || IndexShards.indexExists(target)) {
+            throw new AppRuntimeException("Rebalance : Target already holds an index " + target);
+        }
+        long start = System.currentTimeMillis();
+
+        // Closing a reader does not close its directory. So, both are tracked and closed.
+        List<Directory> sourceDirectories = new ArrayList<>();
+        List<DirectoryReader> sources = new ArrayList<>();
+        try {
+            for (Path shard : IndexShards.detect(source)) {
+                Directory directory = MMapDirectory.open(shard);
+                sourceDirectories.add(directory);
+                sources.add(DirectoryReader.open(directory));
+            }
+            String lastId = getLastId(sources);
+
+            List<LeafReaderContext> leaves = new ArrayList<>();
+            List<int[]> routes = new ArrayList<>();
+            for (DirectoryReader reader : sources) {
+                for (LeafReaderContext leaf : reader.leaves()) {
+                    leaves.add(leaf);
+                    routes.add(route(leaf.reader(), shardCount));
+                }
+            }
+
+            List<Path> targets = IndexShards.layout(target, shardCount);
+            for (int shard = 0; shard < shardCount; shard++) {
+                List<CodecReader> parts = new ArrayList<>(leaves.size());
+                for (int i = 0; i < leaves.size(); i++) {
+                    parts.add(new RoutedReader(SlowCodecReaderWrapper.wrap(leaves.get(i).reader()), routes.get(i), shard));
+                }
+                Files.createDirectories(targets.get(shard));
+                try (Directory directory = MMapDirectory.open(targets.get(shard));
+                     IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig().setOpenMode(IndexWriterConfig.OpenMode.CREATE))) {
+                    writer.addIndexes(parts.toArray(new CodecReader[0]));
+                    if (lastId != null) {
+                        writer.setLiveCommitData(Collections.singletonMap(AppConstants.COMMIT_LAST_ID, lastId).entrySet());
+                    }
+                    writer.commit();
+                    LOGGER.info("Rebalance : Shard {} holds {} documents.", shard, writer.numDocs());
+                }
+            }
+        } finally {
+            try {
+                IOUtils.close(sources);
+            } finally {
+                IOUtils.close(sourceDirectories);
+            }
+        }
+        LOGGER.info("Rebalance : Moved {} into {} shards at {} in {} ms.", source, shardCount, target, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * @return Lowest id committed by the source shards, as picked up by {@link Indexer#initialize}. A shard left at
+     * an older checkpoint misses the rows above it, and those would be skipped for good if a higher id was carried over.
+     * Null in case none of the shards recorded one.
+     */
+    private String getLastId(List<DirectoryReader> readers) throws IOException {
+        long lastId = Long.MAX_VALUE;
+        for (DirectoryReader reader : readers) {
+            String id = reader.getIndexCommit().getUserData().get(AppConstants.COMMIT_LAST_ID);
+            if (id != null) {
+                lastId = Math.min(lastId, Long.parseLong(id));
+            }
+        }
+        return lastId == Long.MAX_VALUE ? null : Long.toString(lastId);
+    }
+
+    /**
+     * @return Target shard of every document of the segment. -1 for deleted documents.
+     */
+    private int[] route(LeafReader reader, int shardCount) throws IOException {
+        NumericDocValues ids = reader.getNumericDocValues(AppConstants.FIELD_ID);
+        Bits withId = reader.getDocsWithField(AppConstants.FIELD_ID);
+        Bits liveDocs = reader.getLiveDocs();
+        int[] routes = new int[reader.maxDoc()];
+        for (int doc = 0; doc < routes.length; doc++) {
+            if (liveDocs != null && !liveDocs.get(doc)) {
+                routes[doc] = -1;
+            } else if (ids == null || withId == null || !withId.get(doc)) {
+                routes[doc] = IndexShards.shardFor(null, shardCount);
+            } else {
+                routes[doc] = IndexShards.shardFor(Long.toString(ids.get(doc)), shardCount);
+            }
+        }
+        return routes;
+    }
+
+    /**
+     * Segment restricted to the documents routed to a single shard. The rest appear deleted.
+     */
+    private static class RoutedReader extends FilterCodecReader {
+        private final FixedBitSet liveDocs;
+        private final int numDocs;
+
+        RoutedReader(CodecReader in, int[] routes, int shard) {
+            super(in);
+            liveDocs = new FixedBitSet(routes.length);
+            for (int doc = 0; doc < routes.length; doc++) {
+                if (routes[doc] == shard) {
+                    liveDocs.set(doc);
+                }
+            }
+            numDocs = liveDocs.cardinality();
+        }
+
+        @Override
+        public Bits getLiveDocs() {
+            return liveDocs;
+        }
+
+        @Override
+        public int numDocs() {
+            return numDocs;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package in.vshukla.booksindia;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.IOUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link SearcherManager} counterpart for a sharded index. Searchers run over a {@link MultiReader} of the shards.
+ * On refresh only the changed shards are reopened. The rest are shared with the previous searcher.
+ *
+ * Every current shard reader holds a reference owned by this manager. Every {@link MultiReader} holds a reference
+ * of its own on the shard readers it was built from, which it drops once it is closed.
+ */
+public class ShardedSearcherManager extends ReferenceManager<IndexSearcher> {
+
+    private final SearcherFactory searcherFactory;
+
+    private DirectoryReader[] shards;
+
+    /**
+     * Search the latest commit of every shard.
+     *
+     * @param directories       Directories of the shards, in order.
+     * @param searcherFactory   Factory of the searchers. Null for the default one.
+     * @throws IOException In case of low-level IO errors.
+     */
+    public ShardedSearcherManager(List<Directory> directories, SearcherFactory searcherFactory) throws IOException {
+        this.searcherFactory = searcherFactory == null ? new SearcherFactory() : searcherFactory;
+        List<DirectoryReader> readers = new ArrayList<>(directories.size());
+        try {
+            for (Directory directory : directories) {
+                readers.add(DirectoryReader.open(directory));
+            }
+        } catch (IOException e) {
+            IOUtils.closeWhileHandlingException(readers);
+            throw e;
+        }
+        init(readers.toArray(new DirectoryReader[0]));
+    }
+
+    /**
+     * Search the documents indexed so far by the given writers, whether committed or not.
+     *
+     * @param writers           Writers of the shards, in order.
+     * @param searcherFactory   Factory of the searchers. Null for the default one.
+     * @throws IOException In case of low-level IO errors.
+     */
+    public ShardedSearcherManager(IndexWriter[] writers, SearcherFactory searcherFactory) throws IOException {
+        this.searcherFactory = searcherFactory == null ? new SearcherFactory() : searcherFactory;
+        List<DirectoryReader> readers = new ArrayList<>(writers.length);
+        try {
+            for (IndexWriter writer : writers) {
+                readers.add(DirectoryReader.open(writer));
+            }
+        } catch (IOException e) {
+            IOUtils.closeWhileHandlingException(readers);
+            throw e;
+        }
+        init(readers.toArray(new DirectoryReader[0]));
+    }
+
+    private void init(DirectoryReader[] readers) throws IOException {
+        this.shards = readers;
+        try {
+            current = newSearcher(readers);
+        } catch (IOException e) {
+            IOUtils.closeWhileHandlingException(readers);
+            throw e;
+        }
+    }
+
+    /**
+     * @return Number of shards being searched.
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    @Override
+    protected void decRef(IndexSearcher reference) throws IOException {
+        reference.getIndexReader().decRef();
+    }
+
+    @Override
+    protected IndexSearcher refreshIfNeeded(IndexSearcher referenceToRefresh) throws IOException {
+        // Called under the refresh lock of the ReferenceManager. So, there is a single refresh at a time.
+        DirectoryReader[] next = shards.clone();
+        boolean changed = false;
+        try {
+            for (int i = 0; i < next.length; i++) {
+                DirectoryReader reopened = DirectoryReader.openIfChanged(shards[i]);
+                if (reopened != null) {
+                    next[i] = reopened;
+                    changed = true;
+                }
+            }
+            if (!changed) {
+                return null;
+            }
+            IndexSearcher searcher = newSearcher(next);
+            for (int i = 0; i < next.length; i++) {
+                if (next[i] != shards[i]) {
+                    shards[i].decRef();
+                }
+            }
+            shards = next;
+            return searcher;
+        } catch (IOException e) {
+            for (int i = 0; i < next.length; i++) {
+                if (next[i] != shards[i]) {
+                    IOUtils.closeWhileHandlingException(next[i]);
+                }
+            }
+            throw e;
+        }
+    }
+
+    private IndexSearcher newSearcher(DirectoryReader[] readers) throws IOException {
+        // The MultiReader takes a reference on every shard, and drops it when it is closed.
+        IndexReader reader = new MultiReader(readers, false);
+        return SearcherManager.getSearcher(searcherFactory, reader, null);
+    }
+
+    @Override
+    protected boolean tryIncRef(IndexSearcher reference) {
+        return reference.getIndexReader().tryIncRef();
+    }
+
+    @Override
+    protected int getRefCount(IndexSearcher reference) {
+        return reference.getIndexReader().getRefCount();
+    }
+
+    @Override
+    protected void afterClose() throws IOException {
+        for (DirectoryReader shard : shards) {
+            shard.decRef();
+        }
+    }
+}
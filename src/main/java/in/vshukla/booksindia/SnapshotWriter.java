@@ -0,0 +1,317 @@
+package in.vshukla.booksindia;
+
+import in.vshukla.booksindia.exceptions.AppRuntimeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Writes rows into a {@link BookSnapshot} file.
+ *
+ * Every column is written to a temporary file of its own next to the snapshot, as the rows arrive. Once all the rows
+ * are written, {@link #finish()} writes the header and appends the columns to it one after the other. The snapshot is
+ * written under a temporary name and moved in place at the end. Closing the writer without finishing it discards the
+ * rows, so a failed export never leaves a partial snapshot behind.
+ *
+ * Not thread safe. Rows must be written from a single thread.
+ *
+ * Usage : SnapshotWriter &lt;file&gt;
+ */
+public class SnapshotWriter implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SnapshotWriter.class);
+
+    private static final String EXPORT_SQL = "SELECT * FROM book ORDER BY id";
+
+    private final Path file;
+
+    private String[] columns;
+
+    private Path[] columnFiles;
+
+    private DataOutputStream[] columnOutputs;
+
+    // Bytes written to every column so far, and where every block of every column starts.
+    private long[] columnLengths;
+
+    private long[][] blockOffsets;
+
+    private int blockCount;
+
+    private long rowCount;
+
+    private boolean finished;
+
+    /**
+     * @param file  Snapshot to be written. Replaced in case it exists.
+     */
+    public SnapshotWriter(Path file) {
+        AppUtils.nullCheck(file, "Snapshot : Cannot write to a null file.");
+        this.file = file.toAbsolutePath();
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            LOGGER.error("Usage : SnapshotWriter <file>");
+            return;
+        }
+        try {
+            export(DbConnection.getInstance(), Paths.get(args[0]));
+        } catch (SQLException e) {
+            LOGGER.error("Snapshot : Caught SQL Exception", e);
+        } catch (IOException e) {
+            LOGGER.error("Snapshot : IO Error while writing the snapshot.", e);
+        }
+    }
+
+    /**
+     * Stream the book table into a snapshot, in the order of the ids.
+     *
+     * @param dbConnection  Source of the rows.
+     * @param file          Snapshot to be written.
+     * @return Number of rows written.
+     * @throws SQLException In case of errors while reading the rows.
+     * @throws IOException  In case of errors while writing the snapshot.
+     */
+    public static long export(DbConnection dbConnection, Path file) throws SQLException, IOException {
+        AppUtils.nullCheck(dbConnection, "Snapshot : Cannot work with a null DB connection.");
+        long start = System.nanoTime();
+        try (SnapshotWriter writer = new SnapshotWriter(file);
+             Stream<Row> rows = dbConnection.fetchResult(EXPORT_SQL)) {
+            rows.forEach(row -> {
+                try {
+                    writer.write(row);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            writer.finish();
+            long elapsedMs = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+            LOGGER.info("Snapshot : Exported {} rows to {} in {} ms ({} rows/sec). Size : {} MB", writer.rowCount, file,
+                    elapsedMs, writer.rowCount * 1000 / elapsedMs, Files.size(file) / (1024 * 1024));
+            return writer.rowCount;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @return Consumer writing every row it is called with.
+     */
+    public Consumer<ResultSet> reader() {
+        return rs -> {
+            try {
+                write(rs);
+            } catch (SQLException e) {
+                throw new AppRuntimeException("Snapshot : Unable to read the row.", e);
+            } catch (IOException e) {
+                throw new AppRuntimeException("Snapshot : Unable to write the row.", e);
+            }
+        };
+    }
+
+    /**
+     * Write the current row of the given result set. Values are cleaned as they are for indexing.
+     *
+     * @param resultSet Result set positioned on the row to be written.
+     * @throws SQLException In case of errors while reading the row.
+     * @throws IOException  In case of errors while writing the row.
+     */
+    public void write(ResultSet resultSet) throws SQLException, IOException {
+        if (columns == null) {
+            begin(Row.columnsOf(resultSet.getMetaData()));
+        }
+        startRow();
+        for (int i = 0; i < columns.length; i++) {
+            writeValue(i, AppUtils.cleanValue(resultSet.getString(i + 1)));
+        }
+        rowCount++;
+    }
+
+    /**
+     * Write the given row. All the rows should have the same columns.
+     *
+     * @param row   Row to be written.
+     * @throws IOException In case of errors while writing the row.
+     */
+    public void write(Row row) throws IOException {
+        if (columns == null) {
+            begin(row.getColumns().clone());
+        }
+        if (row.getColumnCount() != columns.length) {
+            throw new IllegalArgumentException("Snapshot : Expected " + columns.length + " columns. Found " + row.getColumnCount());
+        }
+        startRow();
+        for (int i = 0; i < columns.length; i++) {
+            writeValue(i, row.getValue(i));
+        }
+        rowCount++;
+    }
+
+    private void begin(String[] columnNames) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("Snapshot : Writer is already finished.");
+        }
+        columns = columnNames;
+        columnFiles = new Path[columns.length];
+        columnOutputs = new DataOutputStream[columns.length];
+        columnLengths = new long[columns.length];
+        blockOffsets = new long[columns.length][64];
+        for (int i = 0; i < columns.length; i++) {
+            columnFiles[i] = Files.createTempFile(file.getParent(), file.getFileName() + ".col" + i + "-", ".tmp");
+            columnOutputs[i] = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(columnFiles[i]), 1 << 16));
+        }
+    }
+
+    private void startRow() {
+        if (rowCount % BookSnapshot.BLOCK_ROWS != 0) {
+            return;
+        }
+        if (blockCount == blockOffsets[0].length) {
+            for (int i = 0; i < columns.length; i++) {
+                blockOffsets[i] = Arrays.copyOf(blockOffsets[i], blockCount * 2);
+            }
+        }
+        for (int i = 0; i < columns.length; i++) {
+            blockOffsets[i][blockCount] = columnLengths[i];
+        }
+        blockCount++;
+    }
+
+    private void writeValue(int column, String value) throws IOException {
+        DataOutputStream out = columnOutputs[column];
+        if (value == null) {
+            out.writeInt(BookSnapshot.NULL_LENGTH);
+            columnLengths[column] += Integer.BYTES;
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        columnLengths[column] += Integer.BYTES + bytes.length;
+    }
+
+    /**
+     * Assemble the snapshot from the rows written so far. A writer which got no rows writes an empty snapshot.
+     *
+     * @throws IOException In case of errors while writing the snapshot.
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (columns == null) {
+            columns = new String[0];
+            columnFiles = new Path[0];
+            columnOutputs = new DataOutputStream[0];
+            columnLengths = new long[0];
+            blockOffsets = new long[0][];
+        }
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            for (DataOutputStream out : columnOutputs) {
+                out.close();
+            }
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeFully(channel, ByteBuffer.wrap(header()));
+                for (Path columnFile : columnFiles) {
+                    try (FileChannel column = FileChannel.open(columnFile, StandardOpenOption.READ)) {
+                        long size = column.size();
+                        for (long pos = 0; pos < size; ) {
+                            pos += column.transferTo(pos, size - pos, channel);
+                        }
+                    }
+                }
+                channel.force(false);
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+            close();
+        }
+    }
+
+    /**
+     * Remove the temporary files. Rows not yet finished are discarded.
+     *
+     * @throws IOException In case of errors while removing the files.
+     */
+    @Override
+    public void close() throws IOException {
+        if (columnFiles == null) {
+            return;
+        }
+        for (DataOutputStream out : columnOutputs) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                LOGGER.warn("Snapshot : Unable to close a column.", e);
+            }
+        }
+        for (Path columnFile : columnFiles) {
+            Files.deleteIfExists(columnFile);
+        }
+        columnFiles = null;
+    }
+
+    /**
+     * @return Header, as described in {@link BookSnapshot}.
+     */
+    private byte[] header() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(bytes);
+        body.writeLong(rowCount);
+        body.writeInt(BookSnapshot.BLOCK_ROWS);
+        body.writeInt(blockCount);
+        body.writeInt(columns.length);
+        long dataStart = 0;
+        for (int i = 0; i < columns.length; i++) {
+            body.writeUTF(columns[i]);
+            body.writeLong(dataStart);
+            body.writeLong(columnLengths[i]);
+            for (int b = 0; b < blockCount; b++) {
+                body.writeLong(blockOffsets[i][b]);
+            }
+            dataStart += columnLengths[i];
+        }
+        body.flush();
+
+        ByteBuffer header = ByteBuffer.allocate(BookSnapshot.PREFIX_BYTES + bytes.size());
+        header.putInt(BookSnapshot.MAGIC).putInt(BookSnapshot.VERSION).putInt(bytes.size()).put(bytes.toByteArray());
+        return header.array();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * @return Number of rows written so far.
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+}
@@ -0,0 +1,136 @@
+package in.vshukla.booksindia;
+
+import org.postgresql.PGStatement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Least recently used cache of the prepared statements of a single connection, keyed by their SQL.
+ *
+ * A statement is planned by the server once and run again with new parameters. The driver names a statement on the
+ * server after it has run {@code prepareThreshold} times. From then on its plan is reused as well.
+ * Closing the connection closes its statements, so they need not be closed separately in that case.
+ *
+ * Not thread safe, as a connection is used by a single thread at a time. For the same reason, a single statement of
+ * the connection is in use at a time, and the statement evicted to make room for it is never the one in use.
+ * Get instances from {@link ConnectionPool#getStatementCache(Connection)}.
+ */
+public class StatementCache implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StatementCache.class);
+
+    private final Connection connection;
+
+    private final int maxSize;
+
+    private final int prepareThreshold;
+
+    private final LongAdder hits;
+
+    private final LongAdder misses;
+
+    private final LinkedHashMap<String, PreparedStatement> statements;
+
+    /**
+     * @param connection        Connection the statements are prepared on.
+     * @param maxSize           Maximum number of statements kept open. 0 to close every statement once released.
+     * @param prepareThreshold  Runs after which the driver prepares a statement on the server.
+     * @param hits              Counter of statements served from the cache.
+     * @param misses            Counter of statements prepared afresh.
+     */
+    StatementCache(Connection connection, int maxSize, int prepareThreshold, LongAdder hits, LongAdder misses) {
+        this.connection = connection;
+        this.maxSize = Math.max(0, maxSize);
+        this.prepareThreshold = prepareThreshold;
+        this.hits = hits;
+        this.misses = misses;
+        this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= StatementCache.this.maxSize) {
+                    return false;
+                }
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Get the statement for the given SQL. Every statement must be handed back using {@link #release(PreparedStatement)}.
+     *
+     * @param sql   SQL of the statement.
+     * @return Prepared statement, with no parameters set.
+     * @throws SQLException In case of errors while preparing.
+     */
+    public PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement stmt = statements.get(sql);
+        if (stmt != null) {
+            if (!stmt.isClosed()) {
+                hits.increment();
+                return stmt;
+            }
+            statements.remove(sql);
+        }
+        misses.increment();
+        stmt = connection.prepareStatement(sql);
+        if (prepareThreshold > 0 && stmt instanceof PGStatement) {
+            ((PGStatement) stmt).setPrepareThreshold(prepareThreshold);
+        }
+        if (maxSize > 0) {
+            statements.put(sql, stmt);
+        }
+        return stmt;
+    }
+
+    /**
+     * Hand back a statement obtained from {@link #prepare(String)}. Cached statements are kept open for the next use,
+     * the rest are closed.
+     *
+     * @param stmt Statement to be handed back.
+     */
+    public void release(PreparedStatement stmt) {
+        if (stmt == null) {
+            return;
+        }
+        try {
+            if (maxSize > 0) {
+                stmt.clearParameters();
+            } else {
+                stmt.close();
+            }
+        } catch (SQLException e) {
+            LOGGER.warn("DB : Unable to release a statement. Dropping it.", e);
+            statements.values().remove(stmt);
+            closeQuietly(stmt);
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement stmt) {
+        try {
+            stmt.close();
+        } catch (SQLException e) {
+            LOGGER.debug("DB : Error closing the statement.", e);
+        }
+    }
+
+    public int size() {
+        return statements.size();
+    }
+
+    /**
+     * Close all the cached statements.
+     */
+    @Override
+    public void close() {
+        statements.values().forEach(StatementCache::closeQuietly);
+        statements.clear();
+    }
+}
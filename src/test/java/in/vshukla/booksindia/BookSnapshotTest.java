@@ -0,0 +1,170 @@
+package in.vshukla.booksindia;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BookSnapshotTest {
+
+    private static final String[] COLUMNS = {"id", "isbn", "title"};
+
+    // Two full blocks and a partial one.
+    private static final int ROWS = 2 * BookSnapshot.BLOCK_ROWS + 100;
+
+    private Path dir;
+
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("booksindia-snapshot");
+        file = dir.resolve("book.snap");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void rowsRoundTripInOrder() throws IOException {
+        write(ROWS);
+        try (BookSnapshot snapshot = BookSnapshot.open(file)) {
+            assertEquals(ROWS, snapshot.getRowCount());
+            assertArrayEquals(COLUMNS, snapshot.getColumns());
+            List<Row> rows = snapshot.stream().collect(Collectors.toList());
+            assertEquals(ROWS, rows.size());
+            for (int i = 0; i < ROWS; i++) {
+                assertArrayEquals(values(i), new String[]{rows.get(i).getValue(0), rows.get(i).getValue(1), rows.get(i).getValue(2)});
+            }
+        }
+        // Only the snapshot is left behind.
+        try (Stream<Path> paths = Files.list(dir)) {
+            assertEquals(Arrays.asList(file), paths.collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void splitsIntoRangesOfBlocks() throws IOException {
+        write(ROWS);
+        try (BookSnapshot snapshot = BookSnapshot.open(file)) {
+            Spliterator<Row> rest = snapshot.stream().spliterator();
+            assertEquals(ROWS, rest.estimateSize());
+            Spliterator<Row> prefix = rest.trySplit();
+            assertNotNull(prefix);
+            assertEquals(ROWS, prefix.estimateSize() + rest.estimateSize());
+            // The first block is handed over, the next two stay with this one.
+            assertEquals(BookSnapshot.BLOCK_ROWS, prefix.estimateSize());
+            assertNull(prefix.trySplit());
+
+            long[] first = new long[1];
+            assertTrue(prefix.tryAdvance(row -> first[0] = Long.parseLong(row.getValue(0))));
+            assertEquals(0, first[0]);
+            long[] suffixFirst = new long[1];
+            assertTrue(rest.tryAdvance(row -> suffixFirst[0] = Long.parseLong(row.getValue(0))));
+            assertEquals(BookSnapshot.BLOCK_ROWS, suffixFirst[0]);
+
+            // Once reading, the rows already mapped are not handed over.
+            assertNull(rest.trySplit());
+
+            List<String> ids = snapshot.stream().parallel().map(row -> row.getValue(0)).collect(Collectors.toList());
+            for (int i = 0; i < ROWS; i++) {
+                assertEquals(Integer.toString(i), ids.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void emptySnapshot() throws IOException {
+        try (SnapshotWriter writer = new SnapshotWriter(file)) {
+            writer.finish();
+        }
+        try (BookSnapshot snapshot = BookSnapshot.open(file)) {
+            assertEquals(0, snapshot.getRowCount());
+            assertEquals(0, snapshot.stream().count());
+        }
+    }
+
+    @Test
+    public void unfinishedWriterLeavesNothingBehind() throws IOException {
+        try (SnapshotWriter writer = new SnapshotWriter(file)) {
+            writer.write(new Row(COLUMNS, values(0)));
+        }
+        try (Stream<Path> paths = Files.list(dir)) {
+            assertFalse(paths.findAny().isPresent());
+        }
+    }
+
+    @Test
+    public void rejectsOtherFiles() throws IOException {
+        Files.write(file, "id,isbn,title\n1,2,3\n".getBytes("UTF-8"));
+        assertRejected("Not a snapshot");
+    }
+
+    @Test
+    public void rejectsOtherVersions() throws IOException {
+        write(10);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write((ByteBuffer) ByteBuffer.allocate(Integer.BYTES).putInt(BookSnapshot.VERSION + 1).flip(), Integer.BYTES);
+        }
+        assertRejected("Unsupported version");
+    }
+
+    @Test
+    public void rejectsTruncatedFiles() throws IOException {
+        write(10);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+        assertRejected("Expected");
+    }
+
+    private void assertRejected(String message) {
+        try (BookSnapshot ignored = BookSnapshot.open(file)) {
+            fail("Opened " + ignored);
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+
+    private void write(int rows) throws IOException {
+        try (SnapshotWriter writer = new SnapshotWriter(file)) {
+            for (int i = 0; i < rows; i++) {
+                writer.write(new Row(COLUMNS, values(i)));
+            }
+            writer.finish();
+            assertEquals(rows, writer.getRowCount());
+        }
+    }
+
+    /**
+     * @return Values of the i-th row, with nulls, empty and non ASCII values mixed in.
+     */
+    private static String[] values(int i) {
+        String isbn = i % 7 == 0 ? null : i % 11 == 0 ? "" : "isbn-" + i;
+        return new String[]{Integer.toString(i), isbn, "Kannada \u0c95\u0ca8\u0ccd\u0ca8\u0ca1 " + i};
+    }
+}
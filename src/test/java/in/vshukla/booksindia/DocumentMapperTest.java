@@ -0,0 +1,138 @@
+package in.vshukla.booksindia;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexableField;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DocumentMapperTest {
+
+    private final DocumentMappers mappers = new DocumentMappers(IndexSchema.forBooks());
+
+    @Test
+    public void jacksonNameLowercasesLeadingCapitals() throws NoSuchMethodException {
+        assertEquals("isbn", DocumentMapper.jacksonName(Book.class.getMethod("getISBN")));
+        assertEquals("urlname", DocumentMapper.jacksonName(Book.class.getMethod("getURLName")));
+        assertEquals("title", DocumentMapper.jacksonName(Book.class.getMethod("getTitle")));
+        assertEquals("available", DocumentMapper.jacksonName(Book.class.getMethod("isAvailable")));
+    }
+
+    @Test
+    public void mapsAsJacksonDoes() {
+        Book book = new Book();
+        Map<String, String> expected = AppUtils.getMapFromObject(book);
+        expected.values().removeIf(value -> value == null);
+        assertEquals(expected, valuesOf(mappers.toDocument(book)));
+    }
+
+    @Test
+    public void honoursJsonPropertyAndJsonIgnore() {
+        Map<String, String> values = valuesOf(mappers.toDocument(new Book()));
+        // Renamed on the getter.
+        assertEquals("42", values.get("gr_id"));
+        assertFalse(values.containsKey("goodreadsId"));
+        // Renamed on the private field backing the getter.
+        assertEquals("An honest review", values.get("review"));
+        assertFalse(values.containsKey("opinion"));
+        // Ignored on the private field backing the getter, and on a public field.
+        assertFalse(values.containsKey("secret"));
+        assertFalse(values.containsKey("internal"));
+    }
+
+    @Test
+    public void leavesClassesOnlyJacksonHandlesToJackson() {
+        assertTrue(mappers.isSupported(Book.class));
+        assertFalse(mappers.isSupported(Hidden.class));
+        assertFalse(mappers.isSupported(Dated.class));
+        assertFalse(mappers.isSupported(Formatted.class));
+    }
+
+    private static Map<String, String> valuesOf(Document document) {
+        Map<String, String> values = new HashMap<>();
+        for (IndexableField field : document.getFields()) {
+            if (field.stringValue() != null) {
+                values.put(field.name(), field.stringValue());
+            }
+        }
+        return values;
+    }
+
+    public enum Binding {
+        PAPERBACK, HARDCOVER
+    }
+
+    public static class Book {
+        public String title = "Malgudi Days";
+
+        @JsonIgnore
+        public String internal = "Not to be indexed";
+
+        @JsonIgnore
+        private String secret = "Not to be indexed either";
+
+        @JsonProperty("review")
+        private String opinion = "An honest review";
+
+        public String getISBN() {
+            return "9780143039655";
+        }
+
+        public String getURLName() {
+            return null;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @JsonProperty("gr_id")
+        public long getGoodreadsId() {
+            return 42;
+        }
+
+        public String getSecret() {
+            return secret;
+        }
+
+        public String getOpinion() {
+            return opinion;
+        }
+
+        public Binding getBinding() {
+            return Binding.PAPERBACK;
+        }
+
+        public double getRating() {
+            return 4.25;
+        }
+    }
+
+    static class Hidden {
+        public String title = "Swami and Friends";
+    }
+
+    public static class Dated {
+        public Date getPublished() {
+            return new Date(0);
+        }
+    }
+
+    public static class Formatted {
+        @JsonFormat(shape = JsonFormat.Shape.STRING)
+        public long id = 1;
+    }
+}
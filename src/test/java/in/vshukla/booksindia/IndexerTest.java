@@ -0,0 +1,204 @@
+package in.vshukla.booksindia;
+
+import in.vshukla.booksindia.exceptions.AppRuntimeException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.OptionalLong;
+import java.util.concurrent.Callable;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class IndexerTest {
+
+    private Path idxDir;
+
+    @Before
+    public void setUp() throws IOException {
+        idxDir = Files.createTempDirectory("booksindia-indexer");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(idxDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void failedIngestKeepsLastCheckpoint() throws IOException {
+        try (Indexer indexer = open(false)) {
+            insert(indexer, 1, 2, 3);
+            indexer.checkpoint(3);
+            // Rows of other partitions arrive out of order. The ingest then fails before 4 and 5 are indexed.
+            insert(indexer, 10);
+        }
+        try (Indexer indexer = open(true)) {
+            assertEquals(OptionalLong.of(3), indexer.getLastIndexedId());
+            // The resumed build reads every row after the checkpoint again.
+            insert(indexer, 4, 5, 10);
+            indexer.markComplete();
+        }
+        try (Indexer indexer = open(true)) {
+            assertEquals(OptionalLong.of(10), indexer.getLastIndexedId());
+        }
+        BookSearcher searcher = BookSearcher.open(idxDir.toString());
+        try {
+            assertEquals(6, (int) searcher.execute(s -> s.getIndexReader().numDocs()));
+        } finally {
+            searcher.close();
+        }
+    }
+
+    @Test
+    public void failedIngestWithoutCheckpointRecordsNothing() throws IOException {
+        try (Indexer indexer = open(false)) {
+            insert(indexer, 7, 8);
+        }
+        try (Indexer indexer = open(true)) {
+            assertEquals(OptionalLong.empty(), indexer.getLastIndexedId());
+        }
+    }
+
+    @Test
+    public void completedIngestRecordsHighestId() throws IOException {
+        try (Indexer indexer = open(false)) {
+            insert(indexer, 5, 2, 9);
+            indexer.checkpoint(2);
+            indexer.markComplete();
+        }
+        try (Indexer indexer = open(true)) {
+            assertEquals(OptionalLong.of(9), indexer.getLastIndexedId());
+        }
+    }
+
+    @Test
+    public void failedRowsLeaveInlineIngestIncomplete() throws IOException {
+        try (Indexer indexer = open(false)) {
+            FetchResult.InlineIndexing inline = new FetchResult.InlineIndexing(indexer, new RowConverter(indexer.getSchema()));
+            inline.accept(row(1));
+            inline.accept(failingRow());
+            inline.accept(row(3));
+            assertEquals(1, inline.getFailures());
+            try {
+                inline.drain();
+                fail("Checkpoint should not move past a failed row.");
+            } catch (AppRuntimeException expected) {
+                // The failed row is read again by the next build.
+            }
+            inline.finish();
+        }
+        try (Indexer indexer = open(true)) {
+            assertEquals(OptionalLong.empty(), indexer.getLastIndexedId());
+        }
+    }
+
+    @Test
+    public void inlineIngestWithoutFailuresIsComplete() throws IOException {
+        try (Indexer indexer = open(false)) {
+            FetchResult.InlineIndexing inline = new FetchResult.InlineIndexing(indexer, new RowConverter(indexer.getSchema()));
+            inline.accept(row(1));
+            inline.accept(row(3));
+            inline.drain();
+            inline.finish();
+        }
+        try (Indexer indexer = open(true)) {
+            assertEquals(OptionalLong.of(3), indexer.getLastIndexedId());
+        }
+    }
+
+    @Test
+    public void insertsObjectsOfPackagePrivateClassesThroughJackson() throws IOException {
+        try (Indexer indexer = open(false)) {
+            indexer.insert(new LocalBook());
+            indexer.markComplete();
+        }
+        try (Indexer indexer = open(true)) {
+            assertEquals(OptionalLong.of(12), indexer.getLastIndexedId());
+        }
+    }
+
+    static class LocalBook {
+        public String getId() {
+            return "12";
+        }
+
+        public String getTitle() {
+            return "The Guide";
+        }
+    }
+
+    private Indexer open(boolean incremental) throws IOException {
+        Indexer indexer = new Indexer();
+        indexer.initialize(idxDir.toString(), incremental, 1);
+        return indexer;
+    }
+
+    /**
+     * @return Result set positioned on a single row holding just the given id.
+     */
+    private static ResultSet row(long id) {
+        return resultSet(() -> Long.toString(id));
+    }
+
+    /**
+     * @return Result set positioned on a row which cannot be read.
+     */
+    private static ResultSet failingRow() {
+        return resultSet(() -> {
+            throw new SQLException("Connection reset");
+        });
+    }
+
+    private static ResultSet resultSet(Callable<String> id) {
+        ResultSetMetaData metaData = proxy(ResultSetMetaData.class, (method, args) -> {
+            switch (method.getName()) {
+                case "getColumnCount":
+                    return 1;
+                case "getColumnName":
+                case "getColumnLabel":
+                    return AppConstants.FIELD_ID;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+        return proxy(ResultSet.class, (method, args) -> {
+            switch (method.getName()) {
+                case "getMetaData":
+                    return metaData;
+                case "getString":
+                    return id.call();
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    private interface Handler {
+        Object invoke(Method method, Object[] args) throws Exception;
+    }
+
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return type.cast(Proxy.newProxyInstance(IndexerTest.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> handler.invoke(method, args)));
+    }
+
+    private static void insert(Indexer indexer, long... ids) throws IOException {
+        for (long id : ids) {
+            indexer.insert(Collections.singletonMap(AppConstants.FIELD_ID, Long.toString(id)));
+        }
+    }
+}
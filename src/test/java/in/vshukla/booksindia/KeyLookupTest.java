@@ -0,0 +1,98 @@
+package in.vshukla.booksindia;
+
+import org.apache.lucene.document.Document;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class KeyLookupTest {
+
+    private Path idxDir;
+
+    private BookSearcher searcher;
+
+    private final KeyLookup keyLookup = new KeyLookup(IndexSchema.forBooks());
+
+    @Before
+    public void setUp() throws IOException {
+        idxDir = Files.createTempDirectory("booksindia-lookup");
+        // Two shards, so that the keys are spread over more than one segment.
+        try (Indexer indexer = new Indexer()) {
+            indexer.initialize(idxDir.toString(), false, 2);
+            indexer.insert(book(1, "isbn-1", "Malgudi Days"));
+            indexer.insert(book(2, "isbn-2", "The Guide"));
+            indexer.insert(book(3, "isbn-3", "Swami and Friends"));
+            indexer.markComplete();
+        }
+        try (Indexer indexer = new Indexer()) {
+            indexer.initialize(idxDir.toString(), true, 2);
+            // Replaces the first version of the book, which is left behind as a deleted document.
+            indexer.insert(book(2, "isbn-2", "The Guide, Revised"));
+            indexer.markComplete();
+        }
+        searcher = BookSearcher.open(idxDir.toString());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        searcher.close();
+        try (Stream<Path> paths = Files.walk(idxDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void returnsFoundKeysInTheirOrder() throws IOException {
+        Map<String, Document> found = searcher.execute(s ->
+                keyLookup.lookup(s, "isbn", Arrays.asList("isbn-3", "missing", null, "isbn-1"), null));
+        assertEquals(Arrays.asList("isbn-3", "isbn-1"), new ArrayList<>(found.keySet()));
+        assertEquals("Swami and Friends", found.get("isbn-3").get(AppConstants.FIELD_TITLE));
+        assertEquals("Malgudi Days", found.get("isbn-1").get(AppConstants.FIELD_TITLE));
+    }
+
+    @Test
+    public void skipsDeletedDocuments() throws IOException {
+        Document doc = searcher.execute(s -> keyLookup.lookup(s, AppConstants.FIELD_ID, "2", null));
+        assertEquals("The Guide, Revised", doc.get(AppConstants.FIELD_TITLE));
+    }
+
+    @Test
+    public void loadsOnlyTheProjection() throws IOException {
+        Document doc = searcher.execute(s ->
+                keyLookup.lookup(s, "isbn", "isbn-1", Collections.singleton(AppConstants.FIELD_TITLE)));
+        assertEquals("Malgudi Days", doc.get(AppConstants.FIELD_TITLE));
+        assertNull(doc.get("isbn"));
+    }
+
+    @Test
+    public void returnsNullForMissingKey() throws IOException {
+        assertNull(searcher.execute(s -> keyLookup.lookup(s, "isbn", "missing", null)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAnalysedFields() throws IOException {
+        searcher.execute(s -> keyLookup.lookup(s, AppConstants.FIELD_TITLE, "The Guide", null));
+    }
+
+    private static Map<String, String> book(long id, String isbn, String title) {
+        Map<String, String> book = new HashMap<>();
+        book.put(AppConstants.FIELD_ID, Long.toString(id));
+        book.put("isbn", isbn);
+        book.put(AppConstants.FIELD_TITLE, title);
+        return book;
+    }
+}
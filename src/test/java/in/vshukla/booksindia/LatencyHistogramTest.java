@@ -0,0 +1,88 @@
+package in.vshukla.booksindia;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    private static final long[] VALUES = {
+            0, 1, 15, 16, 17, 31, 32, 33, 1000, 1023, 1024, 1025, 999_999, 1_000_000, 123_456_789,
+            1L << 40, (1L << 40) - 1, (1L << 40) + 1, Long.MAX_VALUE / 3, Long.MAX_VALUE - 1, Long.MAX_VALUE
+    };
+
+    @Test
+    public void smallValuesGetTheirOwnBucket() {
+        for (int value = 0; value < 16; value++) {
+            assertEquals(value, LatencyHistogram.bucketOf(value));
+            assertEquals(value, LatencyHistogram.upperBoundOf(value));
+        }
+    }
+
+    @Test
+    public void valueFallsWithinItsBucket() {
+        for (long value : VALUES) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue("Upper bound below " + value, LatencyHistogram.upperBoundOf(bucket) >= value);
+            if (bucket > 0) {
+                assertTrue("Previous bucket holds " + value, LatencyHistogram.upperBoundOf(bucket - 1) < value);
+            }
+        }
+    }
+
+    @Test
+    public void bucketsAreContiguous() {
+        int last = LatencyHistogram.bucketOf(Long.MAX_VALUE);
+        for (int bucket = 0; bucket < last; bucket++) {
+            long upper = LatencyHistogram.upperBoundOf(bucket);
+            assertEquals(bucket, LatencyHistogram.bucketOf(upper));
+            assertEquals(bucket + 1, LatencyHistogram.bucketOf(upper + 1));
+        }
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBoundOf(last));
+    }
+
+    @Test
+    public void errorIsBoundedBySubBuckets() {
+        for (long value : VALUES) {
+            long upper = LatencyHistogram.upperBoundOf(LatencyHistogram.bucketOf(value));
+            assertTrue("Too coarse for " + value, upper - value <= value / 16);
+        }
+    }
+
+    @Test
+    public void percentilesOfRecordedValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int ms = 1; ms <= 100; ms++) {
+            histogram.record(ms * 1_000_000L);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(100, snapshot.getCount());
+        assertWithin(50_000_000L, snapshot.percentile(50));
+        assertWithin(99_000_000L, snapshot.percentile(99));
+        assertWithin(100_000_000L, snapshot.max());
+        assertWithin(1_000_000L, snapshot.percentile(0));
+    }
+
+    @Test
+    public void negativeValuesCountAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(0, histogram.snapshot().max());
+        assertEquals(1, histogram.snapshot().getCount());
+    }
+
+    @Test
+    public void emptyAndResetHistogramsReportZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.snapshot().percentile(99));
+        histogram.record(42);
+        histogram.reset();
+        assertEquals(0, histogram.snapshot().getCount());
+        assertEquals(0, histogram.snapshot().max());
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("Expected about " + expected + " but was " + actual, actual >= expected && actual - expected <= expected / 16);
+    }
+}
@@ -0,0 +1,165 @@
+package in.vshukla.booksindia;
+
+import in.vshukla.booksindia.exceptions.AppRuntimeException;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ResultSetSpliteratorTest {
+
+    private final AtomicInteger closes = new AtomicInteger();
+
+    @Test
+    public void readsRowsInOrderAndClosesOnceExhausted() {
+        ResultSetSpliterator rows = spliterator(5, -1, 2);
+        List<String> ids = new ArrayList<>();
+        while (rows.tryAdvance(row -> ids.add(row.getValue("id")))) {
+            assertEquals(0, closes.get());
+        }
+        assertEquals(ids(0, 5), ids);
+        assertEquals(1, closes.get());
+        assertEquals(0, rows.estimateSize());
+        assertFalse(rows.tryAdvance(row -> fail("Read past the end.")));
+        rows.close();
+        assertEquals(1, closes.get());
+    }
+
+    @Test
+    public void rowsShareTheColumnNames() {
+        List<Row> rows = StreamSupport.stream(spliterator(3, -1, 2), false).collect(Collectors.toList());
+        assertTrue(rows.get(0).getColumns() == rows.get(2).getColumns());
+    }
+
+    @Test
+    public void closeDropsRemainingRowsOnce() {
+        ResultSetSpliterator rows = spliterator(5, -1, 2);
+        assertTrue(rows.tryAdvance(row -> { }));
+        rows.close();
+        rows.close();
+        assertEquals(1, closes.get());
+        assertFalse(rows.tryAdvance(row -> fail("Read after close.")));
+        assertNull(rows.trySplit());
+    }
+
+    @Test
+    public void failureClosesOnce() {
+        ResultSetSpliterator rows = spliterator(5, 2, 2);
+        assertTrue(rows.tryAdvance(row -> { }));
+        assertTrue(rows.tryAdvance(row -> { }));
+        try {
+            rows.tryAdvance(row -> { });
+            fail("Failure of the result set is not passed on.");
+        } catch (AppRuntimeException e) {
+            assertTrue(e.getCause() instanceof SQLException);
+        }
+        assertEquals(1, closes.get());
+        assertFalse(rows.tryAdvance(row -> fail("Read after a failure.")));
+        assertEquals(1, closes.get());
+    }
+
+    @Test
+    public void splitsHandOverTheNextBatch() {
+        ResultSetSpliterator rows = spliterator(5, -1, 2);
+        assertEquals(ids(0, 2), idsOf(rows.trySplit()));
+        assertEquals(ids(2, 4), idsOf(rows.trySplit()));
+        // The last batch is shorter, and reading it runs into the end of the rows.
+        assertEquals(ids(4, 5), idsOf(rows.trySplit()));
+        assertEquals(1, closes.get());
+        assertNull(rows.trySplit());
+    }
+
+    @Test
+    public void batchesOfTheBatchSize() {
+        Spliterator<List<Row>> batches = spliterator(5, -1, 2).batches();
+        List<List<String>> read = new ArrayList<>();
+        while (batches.tryAdvance(batch -> read.add(batch.stream().map(row -> row.getValue("id")).collect(Collectors.toList())))) {
+            // Reads every batch.
+        }
+        List<List<String>> expected = new ArrayList<>();
+        expected.add(ids(0, 2));
+        expected.add(ids(2, 4));
+        expected.add(ids(4, 5));
+        assertEquals(expected, read);
+        assertEquals(1, closes.get());
+    }
+
+    @Test
+    public void batchesSplitIntoSingleBatches() {
+        Spliterator<List<Row>> batches = spliterator(3, -1, 2).batches();
+        Spliterator<List<Row>> first = batches.trySplit();
+        assertNotNull(first);
+        List<List<Row>> handedOver = new ArrayList<>();
+        assertTrue(first.tryAdvance(handedOver::add));
+        assertFalse(first.tryAdvance(handedOver::add));
+        assertEquals(2, handedOver.get(0).size());
+    }
+
+    private static List<String> ids(int from, int to) {
+        List<String> ids = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            ids.add(Integer.toString(i));
+        }
+        return ids;
+    }
+
+    private static List<String> idsOf(Spliterator<Row> rows) {
+        assertNotNull(rows);
+        return StreamSupport.stream(rows, false).map(row -> row.getValue("id")).collect(Collectors.toList());
+    }
+
+    /**
+     * @param rows      Number of rows in the result set, with ids counting up from 0.
+     * @param failAt    Row the result set fails to move to. -1 to never fail.
+     * @param batchSize Rows handed over by a split.
+     */
+    private ResultSetSpliterator spliterator(int rows, int failAt, int batchSize) {
+        return new ResultSetSpliterator(resultSet(rows, failAt), batchSize, null, closes::incrementAndGet);
+    }
+
+    private static ResultSet resultSet(int rows, int failAt) {
+        ResultSetMetaData metaData = (ResultSetMetaData) Proxy.newProxyInstance(ResultSetSpliteratorTest.class.getClassLoader(),
+                new Class<?>[]{ResultSetMetaData.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getColumnCount":
+                            return 2;
+                        case "getColumnName":
+                            return (int) args[0] == 1 ? "id" : "title";
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        int[] current = {-1};
+        return (ResultSet) Proxy.newProxyInstance(ResultSetSpliteratorTest.class.getClassLoader(),
+                new Class<?>[]{ResultSet.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "next":
+                            if (current[0] + 1 == failAt) {
+                                throw new SQLException("Connection reset");
+                            }
+                            return ++current[0] < rows;
+                        case "getMetaData":
+                            return metaData;
+                        case "getString":
+                            return (int) args[0] == 1 ? Integer.toString(current[0]) : "Book " + current[0];
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}